@@ -16,6 +16,8 @@ import org.springframework.web.cors.CorsUtils;
 
 import com.ev.tradeedge.marketconnect.security.JwtAuthenticationFilter;
 
+import jakarta.servlet.DispatcherType;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
@@ -43,11 +45,14 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers(CorsUtils::isPreFlightRequest).permitAll()
+                // Streaming responses complete on an async dispatch that was already authorized
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // Allow access to all static resources in the app directory
                 .requestMatchers("/app/**").permitAll()
                 .requestMatchers("/").permitAll()
                 // API endpoints
                 .requestMatchers("/api/auth/login", "/api/login", "/api/auth/register").permitAll()
+                .requestMatchers("/api/query-tool/catalog/refresh").hasRole("ADMIN")
                 .requestMatchers("/api/**").authenticated()
             )
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
@@ -0,0 +1,95 @@
+package com.ev.tradeedge.marketconnect.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Thread factories for the application's own executors, following spring.threads.virtual.enabled.
+ * With the property set and a Java 21+ runtime, Spring Boot runs Tomcat and scheduled tasks on
+ * virtual threads and the executors built from {@link #threadFactory(String)} use them too.
+ * Otherwise, including on Java 17, everything stays on platform threads.
+ * <p>
+ * Code that blocks inside monitors must stay on platform threads: a virtual thread blocked in a
+ * synchronized block or in Object.wait pins its carrier on Java 21. JSch does both (channel streams
+ * are piped streams waiting inside synchronized methods), so SFTP transfers use
+ * {@link #platformThreadFactory()}.
+ */
+@Component
+public class VirtualThreads {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    // Thread.ofVirtual() and Thread.Builder, looked up so the code also builds for Java 17
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (ReflectiveOperationException e) {
+            // Runtime before Java 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean requested;
+
+    @PostConstruct
+    public void init() {
+        if (requested && OF_VIRTUAL == null) {
+            logger.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads; using platform threads",
+                Runtime.version().feature());
+        } else if (requested) {
+            logger.info("Using virtual threads for request handling and blocking I/O executors");
+        }
+    }
+
+    /**
+     * Check whether virtual threads are requested and available
+     */
+    public boolean isEnabled() {
+        return requested && OF_VIRTUAL != null;
+    }
+
+    /**
+     * Thread factory for an executor whose tasks block on I/O without holding monitors, e.g. JDBC
+     * @param name Thread name prefix
+     * @return Virtual threads if enabled, otherwise platform threads
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (!isEnabled()) {
+            return platformThreadFactory();
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, name + "-", 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * Thread factory for an executor whose tasks block inside monitors, e.g. JSch transfers
+     */
+    public ThreadFactory platformThreadFactory() {
+        return Executors.defaultThreadFactory();
+    }
+}
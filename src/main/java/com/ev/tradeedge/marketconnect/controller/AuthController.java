@@ -5,6 +5,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,8 +17,10 @@ import org.springframework.web.bind.annotation.RestController;
 import com.ev.tradeedge.marketconnect.model.auth.AuthRequest;
 import com.ev.tradeedge.marketconnect.model.auth.AuthResponse;
 import com.ev.tradeedge.marketconnect.model.auth.RegisterRequest;
+import com.ev.tradeedge.marketconnect.security.LoginThrottledException;
 import com.ev.tradeedge.marketconnect.service.AuthService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
 @RestController
@@ -31,8 +35,14 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> login(@RequestBody AuthRequest loginRequest) {
-        return ResponseEntity.ok(authService.login(loginRequest));
+    public ResponseEntity<AuthResponse> login(@RequestBody AuthRequest loginRequest, HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(authService.login(loginRequest, request.getRemoteAddr()));
+        } catch (LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new AuthResponse(false, null, e.getMessage()));
+        }
     }
 
     @PostMapping("/register")
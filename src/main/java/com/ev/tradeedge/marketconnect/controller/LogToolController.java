@@ -1,30 +1,52 @@
 package com.ev.tradeedge.marketconnect.controller;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.ev.tradeedge.marketconnect.model.LogExtractRequest;
 import com.ev.tradeedge.marketconnect.model.Service;
+import com.ev.tradeedge.marketconnect.service.LogExtractionJobService;
+import com.ev.tradeedge.marketconnect.service.LogFileCache;
 import com.ev.tradeedge.marketconnect.service.LogToolService;
+import com.ev.tradeedge.marketconnect.service.SftpSessionPool;
 
 @RestController
 @RequestMapping("/api/log-tool")
 public class LogToolController {
 
     private final LogToolService logToolService;
+    private final SftpSessionPool sftpSessionPool;
+    private final LogFileCache logFileCache;
+    private final LogExtractionJobService logExtractionJobService;
 
   
-    public LogToolController(LogToolService logToolService) {
+    public LogToolController(LogToolService logToolService, SftpSessionPool sftpSessionPool, LogFileCache logFileCache,
+                             LogExtractionJobService logExtractionJobService) {
         this.logToolService = logToolService;
+        this.sftpSessionPool = sftpSessionPool;
+        this.logFileCache = logFileCache;
+        this.logExtractionJobService = logExtractionJobService;
     }
 
     @GetMapping("/services")
@@ -51,4 +73,103 @@ public class LogToolController {
         
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    /**
+     * Stream extracted logs as plain text while the files are scanned, instead of
+     * collecting the whole result in memory first. Same format as /logs.
+     */
+    @PostMapping(value = "/logs/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamLogs(@RequestBody LogExtractRequest request) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try {
+                logToolService.extractLogs(request, writer);
+            } catch (RuntimeException e) {
+                writer.write("Error extracting logs: " + e.getMessage() + "\n");
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+            .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+            .body(body);
+    }
+
+    /**
+     * Start an extraction in the background; poll /jobs/{jobId} for progress and read the
+     * result from /jobs/{jobId}/result in pages while it runs. Jobs are only visible to the
+     * user who started them and to administrators; for anyone else they do not exist.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestBody LogExtractRequest request,
+                                                         Authentication authentication) throws IOException {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(logExtractionJobService.submit(request, authentication.getName()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> getJobs(Authentication authentication) {
+        return ResponseEntity.ok(Map.of("jobs",
+            logExtractionJobService.getJobs(authentication.getName(), isAdmin(authentication))));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId, Authentication authentication) {
+        Map<String, Object> status = logExtractionJobService.getStatus(jobId, authentication.getName(),
+            isAdmin(authentication));
+        return status != null ? ResponseEntity.ok(status) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/jobs/{jobId}/result")
+    public ResponseEntity<Map<String, Object>> getJobResult(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "1048576") int limit,
+            Authentication authentication) throws IOException {
+        try {
+            Map<String, Object> page = logExtractionJobService.getResult(jobId, offset, limit,
+                authentication.getName(), isAdmin(authentication));
+            return page != null ? ResponseEntity.ok(page) : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (NoSuchFileException e) {
+            // Deleted while reading
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId, Authentication authentication) {
+        String user = authentication.getName();
+        boolean admin = isAdmin(authentication);
+        if (!logExtractionJobService.cancel(jobId, user, admin)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(logExtractionJobService.getStatus(jobId, user, admin));
+    }
+
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<Void> deleteJob(@PathVariable String jobId, Authentication authentication) {
+        return logExtractionJobService.delete(jobId, authentication.getName(), isAdmin(authentication))
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/sftp-sessions")
+    public ResponseEntity<Map<String, Map<String, Map<String, Object>>>> getSftpSessionStats() {
+        return ResponseEntity.ok(Map.of("sessions", sftpSessionPool.getStats()));
+    }
+
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(logFileCache.getStats());
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        return authentication.getAuthorities().stream()
+            .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+    }
+}
@@ -1,10 +1,15 @@
 package com.ev.tradeedge.marketconnect.controller;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -12,22 +17,34 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.ev.tradeedge.marketconnect.model.Database;
+import com.ev.tradeedge.marketconnect.model.DatabaseActivity;
 import com.ev.tradeedge.marketconnect.model.FileProcessEvent;
 import com.ev.tradeedge.marketconnect.model.KillQueryRequest;
 import com.ev.tradeedge.marketconnect.model.Query;
+import com.ev.tradeedge.marketconnect.service.DatabaseService;
 import com.ev.tradeedge.marketconnect.service.QueryToolService;
+import com.ev.tradeedge.marketconnect.service.TenantDatasourceCatalog;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RestController
 @RequestMapping("/api/query-tool")
 public class QueryToolController {
 
     private final QueryToolService queryToolService;
+    private final DatabaseService databaseService;
+    private final TenantDatasourceCatalog tenantCatalog;
+    private final ObjectMapper objectMapper;
 
  
-    public QueryToolController(QueryToolService queryToolService) {
+    public QueryToolController(QueryToolService queryToolService, DatabaseService databaseService,
+                               TenantDatasourceCatalog tenantCatalog, ObjectMapper objectMapper) {
         this.queryToolService = queryToolService;
+        this.databaseService = databaseService;
+        this.tenantCatalog = tenantCatalog;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/servers")
@@ -56,6 +73,43 @@ public class QueryToolController {
         return ResponseEntity.ok(Map.of("queries", queryToolService.getQueries(database, server)));
     }
     
+    /**
+     * Stream the activity of every tenant database on a server as newline-delimited JSON,
+     * one DatabaseActivity per line in the order the databases respond.
+     * Mode "database" queries each tenant database; mode "server" takes a single
+     * pg_stat_activity snapshot per physical server and splits it by database.
+     */
+    @GetMapping(value = "/server-activity", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getServerActivity(
+            @RequestParam String name, 
+            @RequestParam String type,
+            @RequestParam(defaultValue = "database") String mode) {
+        StreamingResponseBody body = out -> {
+            try {
+                Consumer<DatabaseActivity> sink = activity -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(activity));
+                        out.write('\n');
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                if ("server".equals(mode)) {
+                    queryToolService.streamServerSnapshot(name, type, sink);
+                } else {
+                    queryToolService.streamServerActivity(name, type, sink);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (Exception e) {
+                out.write(objectMapper.writeValueAsBytes(Map.of("error", "Error getting server activity: " + e.getMessage())));
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+    
     @GetMapping("/events")
     public ResponseEntity<Map<String, List<FileProcessEvent>>> getFileProcessEvents(
             @RequestParam String fileProcessId, 
@@ -78,4 +132,31 @@ public class QueryToolController {
         
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/pools")
+    public ResponseEntity<Map<String, Map<String, Map<String, Object>>>> getPoolStats() {
+        return ResponseEntity.ok(Map.of(
+            "pools", databaseService.getPoolStats(),
+            "servers", databaseService.getTenantServerCounts()));
+    }
+
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Map<String, Map<String, Object>>>> getCatalogStats() {
+        return ResponseEntity.ok(Map.of("catalog", tenantCatalog.getStats()));
+    }
+
+    @PostMapping("/catalog/refresh")
+    public ResponseEntity<Map<String, Object>> refreshCatalog(@RequestParam String type) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int count = tenantCatalog.refresh(type);
+            response.put("success", true);
+            response.put("databases", count);
+            return ResponseEntity.ok(response);
+        } catch (SQLException e) {
+            response.put("success", false);
+            response.put("message", "Failed to refresh tenant datasource catalog: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
 }
\ No newline at end of file
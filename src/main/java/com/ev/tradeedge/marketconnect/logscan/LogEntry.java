@@ -0,0 +1,90 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View of one log entry inside the splitter's byte buffer, without the delimiter and
+ * with surrounding whitespace trimmed. The view is only valid until the splitter moves on;
+ * call {@link #toString()} to keep the text.
+ */
+public class LogEntry {
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    void set(byte[] buffer, int start, int end) {
+        // Trim like String.trim(); UTF-8 continuation bytes are never <= ' '
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        this.buffer = buffer;
+        this.offset = start;
+        this.length = end - start;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Get the byte at a position relative to the start of the entry
+     */
+    public byte byteAt(int index) {
+        return buffer[offset + index];
+    }
+
+    /**
+     * Find an ASCII marker in the entry
+     * @param needle Bytes to find
+     * @param from Position relative to the start of the entry to search from
+     * @return Position relative to the start of the entry, or -1
+     */
+    public int indexOf(byte[] needle, int from) {
+        int last = offset + length - needle.length;
+        byte first = needle[0];
+        for (int i = offset + Math.max(from, 0); i <= last; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && buffer[i + j] == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(byte[] needle) {
+        return indexOf(needle, 0) >= 0;
+    }
+
+    /**
+     * Decode part of the entry
+     */
+    public String substring(int start, int end) {
+        return new String(buffer, offset + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+}
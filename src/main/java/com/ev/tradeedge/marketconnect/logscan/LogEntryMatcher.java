@@ -0,0 +1,147 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Selects the log entries of one file that belong to one or more FileProcessIds.
+ * Entries whose header carries a requested FPID are written to that FPID's output. An entry belongs
+ * to the FPID of its first FileProcessId field only: an entry that mentions another FileProcessId
+ * further on (e.g. in its message) is not selected for that one. The file index and the remote
+ * prefilter follow the same rule. When related
+ * threads are included, entries without an FPID (or with FileProcessId:0) are also written to
+ * every FPID whose recent matching entries had the same thread and tenant.
+ * One matcher is used per file, as thread context does not carry over between files.
+ * Entries are inspected as bytes through a reused {@link LogHeader} and only decoded when written.
+ * The header parser already extracts the FPID value, so looking it up in the requested set is
+ * a binary search and costs the same for one FPID or many.
+ */
+public class LogEntryMatcher {
+    private final long[] sortedFpids;
+    // Output index of each entry in sortedFpids
+    private final int[] outputs;
+    private final LogHeader header = new LogHeader();
+
+    // Recent thread and tenant pairs per output, or null when related threads are not included
+    private final ThreadContextTracker[] contexts;
+    private boolean hasContext;
+    private long entryIndex;
+
+    /**
+     * @param fpids FileProcessIds to select, without duplicates; entries of fpids[i] go to output i
+     * @param includeRelatedThreads Whether to include FPID-less entries of threads that logged a matching entry
+     * @param maxContextKeys Most thread+tenant pairs to remember per FPID
+     * @param contextWindowEntries Entries after which a thread+tenant pair is forgotten, or 0 for never
+     */
+    public LogEntryMatcher(long[] fpids, boolean includeRelatedThreads, int maxContextKeys,
+                           long contextWindowEntries) {
+        this.sortedFpids = fpids.clone();
+        Arrays.sort(sortedFpids);
+        this.outputs = new int[fpids.length];
+        for (int i = 0; i < fpids.length; i++) {
+            outputs[Arrays.binarySearch(sortedFpids, fpids[i])] = i;
+        }
+
+        if (includeRelatedThreads) {
+            contexts = new ThreadContextTracker[fpids.length];
+            for (int i = 0; i < fpids.length; i++) {
+                contexts[i] = new ThreadContextTracker(maxContextKeys, contextWindowEntries);
+            }
+        } else {
+            contexts = null;
+        }
+    }
+
+    /**
+     * Check one entry and write it to the outputs of the FPIDs it belongs to
+     * @param entry Entry without the delimiter
+     * @param out One destination per FPID, in constructor order
+     * @return true if the entry was written
+     */
+    public boolean accept(LogEntry entry, Writer[] out) throws IOException {
+        if (entry.isEmpty()) {
+            return false;
+        }
+        header.parse(entry);
+        return acceptParsed(entry, out);
+    }
+
+    /**
+     * Parse the header of an entry without matching it yet
+     */
+    LogHeader parse(LogEntry entry) {
+        header.parse(entry);
+        return header;
+    }
+
+    /**
+     * Match an entry whose header was just parsed with {@link #parse(LogEntry)}
+     */
+    boolean acceptParsed(LogEntry entry, Writer[] out) throws IOException {
+        if (entry.isEmpty()) {
+            return false;
+        }
+        entryIndex++;
+
+        // Check if the entry belongs to one of the FPIDs directly
+        if (header.hasFileProcessId()) {
+            int found = Arrays.binarySearch(sortedFpids, header.getFileProcessId());
+            if (found >= 0) {
+                int output = outputs[found];
+                write(entry, out[output]);
+
+                // Remember thread and tenant for context tracking
+                if (contexts != null) {
+                    long key = header.threadTenantHash();
+                    if (key != 0) {
+                        contexts[output].touch(key, entryIndex);
+                        hasContext = true;
+                    }
+                }
+                return true;
+            }
+        }
+
+        // Check for FileProcessId:0 (or none) and match with previous context
+        if (hasContext && (!header.hasFileProcessId() || header.getFileProcessId() == 0)) {
+            long key = header.threadTenantHash();
+            if (key == 0) {
+                return false;
+            }
+
+            // If a recent entry of an FPID had this thread+tenant, this one is probably related
+            boolean written = false;
+            for (int output = 0; output < out.length; output++) {
+                if (!contexts[output].isEmpty() && contexts[output].matches(key, entryIndex)) {
+                    write(entry, out[output]);
+                    written = true;
+                }
+            }
+            return written;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether any thread+tenant pair the matcher currently relates entries to passes the test
+     */
+    boolean anyContextKey(LongPredicate test) {
+        if (!hasContext) {
+            return false;
+        }
+        for (ThreadContextTracker context : contexts) {
+            if (context.anyKey(test)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(LogEntry entry, Writer out) throws IOException {
+        out.write("**********\n");
+        out.write(entry.toString());
+        out.write('\n');
+    }
+}
@@ -0,0 +1,141 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into log entries on the "**********" delimiter in a single pass.
+ * Entries are returned as views into the read buffer, so nothing is copied or decoded
+ * unless the caller asks for the text. Entries split exactly as String.split on the
+ * delimiter would split them; an entry longer than the maximum size is cut into pieces
+ * so memory stays bounded.
+ */
+public class LogEntrySplitter {
+    static final int DELIMITER_LENGTH = 10;
+    private static final byte STAR = '*';
+
+    private final InputStream in;
+    private final int maxEntryBytes;
+    private final LogEntry entry = new LogEntry();
+
+    private byte[] buffer;
+    // Current entry starts at start; bytes up to limit have been read; scan resumes at scanFrom
+    private int start;
+    private int limit;
+    private int scanFrom;
+    private boolean eof;
+    private boolean done;
+
+    // Position of buffer[0] in the stream, and the raw range of the last entry returned
+    private long bufferOffset;
+    private long entryOffset;
+    private int entryLength;
+
+    public LogEntrySplitter(InputStream in, int bufferSize, int maxEntryBytes) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.maxEntryBytes = Math.max(maxEntryBytes, bufferSize);
+    }
+
+    /**
+     * Advance to the next entry
+     * @return The entry view, or null at end of input
+     */
+    public LogEntry next() throws IOException {
+        if (done) {
+            return null;
+        }
+        while (true) {
+            int match = findDelimiter(scanFrom, limit);
+            if (match >= 0) {
+                setEntry(start, match);
+                start = match + DELIMITER_LENGTH;
+                scanFrom = start;
+                return entry;
+            }
+
+            if (eof) {
+                done = true;
+                setEntry(start, limit);
+                return entry;
+            }
+
+            // A delimiter may straddle the end of what has been read so far
+            scanFrom = Math.max(start, limit - (DELIMITER_LENGTH - 1));
+
+            if (limit - start >= maxEntryBytes) {
+                // Oversized entry - hand out what we have, keeping a possible partial delimiter
+                int end = scanFrom;
+                setEntry(start, end);
+                start = end;
+                return entry;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Offset in the stream of the last entry returned, before trimming
+     */
+    public long entryOffset() {
+        return entryOffset;
+    }
+
+    /**
+     * Length of the last entry returned, before trimming
+     */
+    public int entryLength() {
+        return entryLength;
+    }
+
+    private void setEntry(int from, int to) {
+        entryOffset = bufferOffset + from;
+        entryLength = to - from;
+        entry.set(buffer, from, to);
+    }
+
+    /**
+     * Find the first run of ten '*' in [from, to). Checks the last byte of each window first
+     * and skips a whole window when it is not '*', so most bytes are never looked at twice.
+     */
+    private int findDelimiter(int from, int to) {
+        int i = from;
+        while (i + DELIMITER_LENGTH <= to) {
+            if (buffer[i + DELIMITER_LENGTH - 1] != STAR) {
+                i += DELIMITER_LENGTH;
+                continue;
+            }
+            int j = i + DELIMITER_LENGTH - 2;
+            while (j >= i && buffer[j] == STAR) {
+                j--;
+            }
+            if (j < i) {
+                return i;
+            }
+            // No window containing position j can be all stars
+            i = j + 1;
+        }
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        if (start > 0) {
+            // Move the current entry to the front of the buffer
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            bufferOffset += start;
+            limit -= start;
+            scanFrom -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxEntryBytes + buffer.length));
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
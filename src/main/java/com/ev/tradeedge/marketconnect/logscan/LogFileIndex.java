@@ -0,0 +1,404 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Index of the entries of one immutable log file, built while the file is scanned the first time.
+ * A Bloom filter over all FileProcessIds in the file lets whole files be skipped. Beyond that, the
+ * decompressed content is cut into blocks of about {@link #BLOCK_BYTES} at entry boundaries, and
+ * each block gets two Bloom filters:
+ * <ul>
+ * <li>over the FileProcessIds of its entries, to find the blocks that can contain an FPID</li>
+ * <li>over the thread+tenant hashes of its entries without an FPID (or with FileProcessId:0), to find
+ * the blocks that can contain related-thread entries of matched threads</li>
+ * </ul>
+ * Block filters are sized by the distinct keys of their block and capped at {@link #MAX_BLOOM_WORDS},
+ * and the file filter is capped at {@link #MAX_FILE_BLOOM_WORDS}, so the index takes at most a few KB
+ * per MB of log, however many entries the file has.
+ * Block offsets refer to the decompressed content; every block starts right after a delimiter.
+ * Each block also records the timestamp in effect at its end (see {@link TimeWindow#contains(long)}),
+ * so blocks outside a time window can be skipped and entries without a timestamp judged like in a
+ * full scan.
+ */
+public class LogFileIndex {
+    private static final int MAGIC = 0x4c494458; // "LIDX"
+    private static final int VERSION = 3;
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+
+    static final int BLOCK_BYTES = 1 << 20;
+    static final int MAX_BLOOM_WORDS = 256;
+    // Power of two, so the filter can be folded to a smaller power of two once the keys are known
+    static final int MAX_FILE_BLOOM_WORDS = 1 << 14;
+
+    private final long[] fileBloom;
+
+    // Start of each block, and the end of the last one
+    private final long[] blockStarts;
+    private final long end;
+
+    // Timestamp in effect at the end of each block, or NO_TIMESTAMP
+    private final long[] blockTimestamps;
+
+    // Filters of all blocks, concatenated; block i uses words [bloomStarts[i], bloomStarts[i + 1])
+    private final long[] fpidBlooms;
+    private final int[] fpidBloomStarts;
+    private final long[] threadBlooms;
+    private final int[] threadBloomStarts;
+
+    private LogFileIndex(long[] fileBloom, long[] blockStarts, long end, long[] blockTimestamps, long[] fpidBlooms,
+                         int[] fpidBloomStarts, long[] threadBlooms, int[] threadBloomStarts) {
+        this.fileBloom = fileBloom;
+        this.blockStarts = blockStarts;
+        this.end = end;
+        this.blockTimestamps = blockTimestamps;
+        this.fpidBlooms = fpidBlooms;
+        this.fpidBloomStarts = fpidBloomStarts;
+        this.threadBlooms = threadBlooms;
+        this.threadBloomStarts = threadBloomStarts;
+    }
+
+    /**
+     * Check whether the file may contain entries of any of the FPIDs
+     */
+    public boolean mightContainAny(long[] wanted) {
+        for (long fpid : wanted) {
+            if (bloomContains(fileBloom, 0, fileBloom.length, fpid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int blockCount() {
+        return blockStarts.length;
+    }
+
+    public long blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    public long blockEnd(int block) {
+        return block + 1 < blockStarts.length ? blockStarts[block + 1] : end;
+    }
+
+    /**
+     * @return Timestamp in effect where the block starts, or {@link LogHeader#NO_TIMESTAMP}
+     */
+    public long blockFirstTimestamp(int block) {
+        return block > 0 ? blockTimestamps[block - 1] : LogHeader.NO_TIMESTAMP;
+    }
+
+    /**
+     * @return Timestamp in effect where the block ends, or {@link LogHeader#NO_TIMESTAMP}
+     */
+    public long blockLastTimestamp(int block) {
+        return blockTimestamps[block];
+    }
+
+    /**
+     * Check whether a block may contain entries of any of the FPIDs
+     */
+    public boolean blockMightContainAny(int block, long[] wanted) {
+        for (long fpid : wanted) {
+            if (bloomContains(fpidBlooms, fpidBloomStarts[block], fpidBloomStarts[block + 1], fpid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a block may contain FPID-less entries of a thread
+     * @param thread Thread+tenant hash from {@link LogHeader#threadTenantHash()}
+     */
+    public boolean blockMightContainThread(int block, long thread) {
+        return bloomContains(threadBlooms, threadBloomStarts[block], threadBloomStarts[block + 1], thread);
+    }
+
+    /**
+     * Save the index to a file
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeLongs(out, fileBloom);
+            writeLongs(out, blockStarts);
+            out.writeLong(end);
+            writeLongs(out, blockTimestamps);
+            writeLongs(out, fpidBlooms);
+            writeInts(out, fpidBloomStarts);
+            writeLongs(out, threadBlooms);
+            writeInts(out, threadBloomStarts);
+        }
+    }
+
+    /**
+     * Load an index saved with {@link #write(Path)}
+     * @throws IOException If the file is missing, truncated or from another version
+     */
+    public static LogFileIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a log file index: " + path);
+            }
+            long[] fileBloom = readLongs(in);
+            long[] blockStarts = readLongs(in);
+            long end = in.readLong();
+            long[] blockTimestamps = readLongs(in);
+            long[] fpidBlooms = readLongs(in);
+            int[] fpidBloomStarts = readInts(in);
+            long[] threadBlooms = readLongs(in);
+            int[] threadBloomStarts = readInts(in);
+            if (blockTimestamps.length != blockStarts.length || fpidBloomStarts.length != blockStarts.length + 1
+                    || threadBloomStarts.length != blockStarts.length + 1) {
+                throw new IOException("Corrupt log file index: " + path);
+            }
+            return new LogFileIndex(fileBloom, blockStarts, end, blockTimestamps, fpidBlooms, fpidBloomStarts,
+                threadBlooms, threadBloomStarts);
+        }
+    }
+
+    private static boolean bloomContains(long[] blooms, int from, int to, long key) {
+        if (from == to) {
+            return false;
+        }
+        long hash1 = mix(key);
+        long hash2 = mix(hash1) | 1;
+        long bits = (to - from) * 64L;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bits);
+            if ((blooms[from + (int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void bloomAdd(long[] blooms, int from, int to, long key) {
+        long hash1 = mix(key);
+        long hash2 = mix(hash1) | 1;
+        long bits = (to - from) * 64L;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bits);
+            blooms[from + (int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static long mix(long z) {
+        // SplitMix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Collects entries during a full scan. Only the keys of the current block are held until the
+     * block is closed and its filters are built.
+     */
+    public static class Builder {
+        private final int blockBytes;
+        private final LongList blockStarts = new LongList();
+        private final LongList blockTimestamps = new LongList();
+        private final BloomList fpidBlooms = new BloomList();
+        private final BloomList threadBlooms = new BloomList();
+        private final LongList blockFpids = new LongList();
+        private final LongList blockThreads = new LongList();
+        private final long[] fileBloom = new long[MAX_FILE_BLOOM_WORDS];
+        private long blockStart;
+        private long end;
+        private long timestamp = LogHeader.NO_TIMESTAMP;
+
+        public Builder() {
+            this(BLOCK_BYTES);
+        }
+
+        /**
+         * @param blockBytes Size at which a block is closed
+         */
+        Builder(int blockBytes) {
+            this.blockBytes = blockBytes;
+        }
+
+        /**
+         * Record one entry; must be called for every entry the splitter returns, in order
+         * @param header Parsed header of the entry
+         * @param offset Offset of the entry text in the decompressed file
+         * @param length Length of the entry text
+         */
+        void add(LogHeader header, long offset, int length) {
+            // Blocks only start right after a delimiter, never inside an oversized entry
+            boolean afterDelimiter = offset > 0 && offset == end + LogEntrySplitter.DELIMITER_LENGTH;
+            if (afterDelimiter && offset - blockStart >= blockBytes) {
+                closeBlock();
+                blockStart = offset;
+            }
+            end = offset + length;
+            if (header.getTimestampSeconds() != LogHeader.NO_TIMESTAMP) {
+                timestamp = header.getTimestampSeconds();
+            }
+
+            if (length == 0) {
+                return;
+            }
+            long thread = header.threadTenantHash();
+            if (header.hasFileProcessId()) {
+                blockFpids.add(header.getFileProcessId());
+                bloomAdd(fileBloom, 0, fileBloom.length, header.getFileProcessId());
+            }
+            if ((!header.hasFileProcessId() || header.getFileProcessId() == 0) && thread != 0) {
+                blockThreads.add(thread);
+            }
+        }
+
+        public LogFileIndex build() {
+            closeBlock();
+            return new LogFileIndex(foldFileBloom(), blockStarts.toArray(), end, blockTimestamps.toArray(),
+                fpidBlooms.words(), fpidBlooms.starts(), threadBlooms.words(), threadBlooms.starts());
+        }
+
+        /**
+         * Shrink the file filter to the smallest power of two that suits the number of distinct FPIDs,
+         * estimated from the bits set. Bit positions are hashes modulo the size, so OR-ing the upper
+         * half onto the lower half gives the filter those keys would have set at half the size.
+         */
+        private long[] foldFileBloom() {
+            long bits = fileBloom.length * 64L;
+            long set = 0;
+            for (long word : fileBloom) {
+                set += Long.bitCount(word);
+            }
+            double keys = set >= bits ? Double.MAX_VALUE : -bits / (double) BLOOM_HASHES * Math.log1p(-set / (double) bits);
+
+            long[] folded = fileBloom;
+            while (folded.length > 1 && folded.length / 2 * 64L >= keys * BLOOM_BITS_PER_KEY) {
+                long[] half = Arrays.copyOf(folded, folded.length / 2);
+                for (int i = 0; i < half.length; i++) {
+                    half[i] |= folded[half.length + i];
+                }
+                folded = half;
+            }
+            return folded == fileBloom ? fileBloom.clone() : folded;
+        }
+
+        private void closeBlock() {
+            blockStarts.add(blockStart);
+            blockTimestamps.add(timestamp);
+            fpidBlooms.addBlock(blockFpids);
+            threadBlooms.addBlock(blockThreads);
+            blockFpids.clear();
+            blockThreads.clear();
+        }
+    }
+
+    /**
+     * Growable long array
+     */
+    private static class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Per-block Bloom filters, appended one block at a time
+     */
+    private static class BloomList {
+        private final LongList words = new LongList();
+        private final LongList starts = new LongList();
+
+        BloomList() {
+            starts.add(0);
+        }
+
+        /**
+         * Append the filter of one block; sorts the keys in place to count the distinct ones
+         */
+        void addBlock(LongList keys) {
+            Arrays.sort(keys.values, 0, keys.size);
+            int distinct = 0;
+            for (int i = 0; i < keys.size; i++) {
+                if (i == 0 || keys.values[i] != keys.values[i - 1]) {
+                    distinct++;
+                }
+            }
+
+            int from = words.size;
+            int length = distinct == 0 ? 0
+                : Math.min(MAX_BLOOM_WORDS, (distinct * BLOOM_BITS_PER_KEY + 63) / 64);
+            for (int i = 0; i < length; i++) {
+                words.add(0);
+            }
+            for (int i = 0; i < keys.size; i++) {
+                if (i == 0 || keys.values[i] != keys.values[i - 1]) {
+                    bloomAdd(words.values, from, from + length, keys.values[i]);
+                }
+            }
+            starts.add(words.size);
+        }
+
+        long[] words() {
+            return words.toArray();
+        }
+
+        int[] starts() {
+            int[] result = new int[starts.size];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = (int) starts.values[i];
+            }
+            return result;
+        }
+    }
+}
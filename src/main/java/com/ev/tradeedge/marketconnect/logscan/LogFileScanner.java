@@ -0,0 +1,348 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scans a log file while it is being read: optional gunzip, entry splitting and matching
+ * run as one pipeline over fixed-size buffers, so memory use does not depend on file size.
+ * Entries are matched on the raw bytes; only entries that are written out get decoded.
+ * With a time window, only entries that belong to the window ({@link TimeWindow#contains(long)})
+ * are matched and written, whichever way the file is read. Assuming entries are in timestamp
+ * order, reading also stops at the first entry stamped after the window, uncompressed files are
+ * entered near the window start instead of at their first byte, and indexed reads skip blocks
+ * outside the window; these only save reading entries the window would drop anyway.
+ */
+@Component
+public class LogFileScanner {
+
+    @Value("${log.scan.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${log.scan.max-entry-bytes:16777216}")
+    private int maxEntryBytes;
+
+    /**
+     * Reads a file from any offset
+     */
+    @FunctionalInterface
+    public interface RangeSource {
+        /**
+         * @return Stream of the file from the offset; closed by the caller
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    /**
+     * Scan one file and write the entries accepted by the matcher
+     * @param in File content; not closed by this method
+     * @param gzip Whether the content is gzip-compressed
+     * @param matcher Matcher for this file
+     * @param out Destination for matching entries, one per FPID of the matcher
+     * @param index Collects every entry for an index of the file, or null
+     * @return Number of entries written
+     * @throws LogReadException If the file cannot be read or decompressed
+     * @throws IOException If writing to the destination fails
+     */
+    public long scan(InputStream in, boolean gzip, LogEntryMatcher matcher, Writer[] out,
+                     LogFileIndex.Builder index) throws IOException {
+        return scan(in, gzip, matcher, out, index, null);
+    }
+
+    /**
+     * Scan one file and write the entries of the time window accepted by the matcher. Without an
+     * index, reading stops at the first entry stamped after the window; with one, the whole file is
+     * read and indexed, and entries outside the window are only not matched.
+     * @param in File content; not closed by this method
+     * @param gzip Whether the content is gzip-compressed
+     * @param matcher Matcher for this file
+     * @param out Destination for matching entries, one per FPID of the matcher
+     * @param index Collects every entry for an index of the file, or null
+     * @param window Entries to write, or null for the whole file
+     * @return Number of entries written
+     * @throws LogReadException If the file cannot be read or decompressed
+     * @throws IOException If writing to the destination fails
+     */
+    public long scan(InputStream in, boolean gzip, LogEntryMatcher matcher, Writer[] out,
+                     LogFileIndex.Builder index, TimeWindow window) throws IOException {
+        LogEntrySplitter entries;
+        try {
+            entries = new LogEntrySplitter(open(in, gzip), bufferSize, maxEntryBytes);
+        } catch (IOException e) {
+            throw new LogReadException("Cannot open log file: " + e.getMessage(), e);
+        }
+        return scanEntries(entries, matcher, out, index, window, false);
+    }
+
+    /**
+     * Scan the part of an uncompressed file that lies in the time window. Entries are assumed to be
+     * roughly in timestamp order: the start of the window is found by binary search over probes of
+     * one buffer each, and reading stops at the first entry stamped after the end of the window.
+     * A file that does not start with a stamped entry is read from the start, as its leading
+     * entries belong to every window.
+     * @param file Opens the file at an offset
+     * @param size File size in bytes
+     * @param window Entries worth reading
+     * @param matcher Matcher for this file
+     * @param out Destination for matching entries, one per FPID of the matcher
+     * @return Number of entries written
+     * @throws LogReadException If the file cannot be read
+     * @throws IOException If writing to the destination fails
+     */
+    public long scan(RangeSource file, long size, TimeWindow window, LogEntryMatcher matcher,
+                     Writer[] out) throws IOException {
+        long start;
+        try {
+            start = startsWithTimestamp(file) ? seek(file, size, window.getFromSeconds()) : 0;
+        } catch (IOException e) {
+            throw new LogReadException("Cannot read log file: " + e.getMessage(), e);
+        }
+
+        InputStream in;
+        try {
+            in = file.open(start);
+        } catch (IOException e) {
+            throw new LogReadException("Cannot open log file: " + e.getMessage(), e);
+        }
+        try (in) {
+            // Unless reading from the start, the first entry is the tail of one before the window
+            return scanEntries(new LogEntrySplitter(in, bufferSize, maxEntryBytes), matcher, out, null, window,
+                start > 0);
+        }
+    }
+
+    /**
+     * Read only the blocks of a file whose index says they can hold entries the matcher writes:
+     * blocks that may contain one of the FPIDs and, while the matcher relates threads, blocks that
+     * may contain FPID-less entries of those threads. Stops after the last block with one of the FPIDs
+     * once no thread is related. With a time window, blocks that end before the window are skipped
+     * and reading stops at the first block that starts after it. Compressed content of skipped blocks
+     * is still inflated but not split or matched. Only valid for matchers whose thread context does
+     * not expire, as the entries of skipped blocks are not counted.
+     * @param in File content; not closed by this method
+     * @param gzip Whether the content is gzip-compressed
+     * @param index Index of the file
+     * @param fpids FPIDs of the matcher
+     * @param matcher Matcher for this file
+     * @param out Destination for matching entries, one per FPID of the matcher
+     * @param window Entries to write, or null for the whole file
+     * @return Number of entries written
+     * @throws LogReadException If the file cannot be read or decompressed
+     * @throws IOException If writing to the destination fails
+     */
+    public long scan(InputStream in, boolean gzip, LogFileIndex index, long[] fpids, LogEntryMatcher matcher,
+                     Writer[] out, TimeWindow window) throws IOException {
+        int lastFpidBlock = -1;
+        for (int block = 0; block < index.blockCount(); block++) {
+            if (index.blockMightContainAny(block, fpids)) {
+                lastFpidBlock = block;
+            }
+        }
+
+        long position = 0;
+        long matched = 0;
+        try {
+            InputStream content = open(in, gzip);
+            for (int block = 0; block < index.blockCount(); block++) {
+                int current = block;
+                if (window != null) {
+                    if (window.isAfter(index.blockFirstTimestamp(block))) {
+                        break;
+                    }
+                    // Entries before the first timestamp of the file belong to every window
+                    long last = index.blockLastTimestamp(block);
+                    if (index.blockFirstTimestamp(block) != LogHeader.NO_TIMESTAMP && last < window.getFromSeconds()) {
+                        continue;
+                    }
+                }
+                boolean hasFpid = index.blockMightContainAny(block, fpids);
+                if (!hasFpid && block > lastFpidBlock && !matcher.anyContextKey(key -> true)) {
+                    break;
+                }
+                if (!hasFpid && !matcher.anyContextKey(key -> index.blockMightContainThread(current, key))) {
+                    continue;
+                }
+
+                content.skipNBytes(index.blockStart(block) - position);
+                long length = index.blockEnd(block) - index.blockStart(block);
+                LogEntrySplitter entries = new LogEntrySplitter(new RangeInputStream(content, length),
+                    bufferSize, maxEntryBytes);
+                long timestamp = index.blockFirstTimestamp(block);
+                for (LogEntry entry = entries.next(); entry != null; entry = entries.next()) {
+                    long stamp = matcher.parse(entry).getTimestampSeconds();
+                    if (stamp != LogHeader.NO_TIMESTAMP) {
+                        timestamp = stamp;
+                    }
+                    if ((window == null || window.contains(timestamp)) && matcher.acceptParsed(entry, out)) {
+                        matched++;
+                    }
+                }
+                if (entries.entryOffset() + entries.entryLength() < length) {
+                    throw new EOFException("Log file is shorter than its index");
+                }
+                position = index.blockEnd(block);
+            }
+        } catch (EOFException | ZipException e) {
+            throw new LogReadException("Cannot read log file: " + e.getMessage(), e);
+        }
+        return matched;
+    }
+
+    private long scanEntries(LogEntrySplitter entries, LogEntryMatcher matcher, Writer[] out,
+                             LogFileIndex.Builder index, TimeWindow window, boolean skipFirst) throws IOException {
+        long matched = 0;
+        // Entries before the seek offset are older than the window
+        long timestamp = skipFirst ? window.getFromSeconds() - 1 : LogHeader.NO_TIMESTAMP;
+        while (true) {
+            LogEntry entry;
+            try {
+                entry = entries.next();
+            } catch (IOException e) {
+                throw new LogReadException("Cannot read log file: " + e.getMessage(), e);
+            }
+            if (entry == null) {
+                return matched;
+            }
+            if (skipFirst) {
+                skipFirst = false;
+                continue;
+            }
+
+            LogHeader header = matcher.parse(entry);
+            long stamp = header.getTimestampSeconds();
+            if (stamp != LogHeader.NO_TIMESTAMP) {
+                timestamp = stamp;
+            }
+            if (index != null) {
+                index.add(header, entries.entryOffset(), entries.entryLength());
+            }
+            if (window != null && !window.contains(timestamp)) {
+                // An index needs every entry; otherwise nothing after the window is worth reading
+                if (index == null && window.isAfter(timestamp)) {
+                    return matched;
+                }
+                continue;
+            }
+            if (matcher.acceptParsed(entry, out)) {
+                matched++;
+            }
+        }
+    }
+
+    /**
+     * Find an offset from which reading loses no entry stamped at or after the target time.
+     * Narrows [low, high) until it fits in one buffer, keeping low at a point whose next entry is older.
+     */
+    private long seek(RangeSource file, long size, long targetSeconds) throws IOException {
+        long low = 0;
+        long high = size;
+        while (high - low > bufferSize) {
+            long mid = low + (high - low) / 2;
+            long timestamp = firstTimestampAfter(file, mid);
+            if (timestamp != LogHeader.NO_TIMESTAMP && timestamp < targetSeconds) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Check whether the first non-empty entry of the file has a timestamp
+     */
+    private boolean startsWithTimestamp(RangeSource file) throws IOException {
+        byte[] probe;
+        try (InputStream in = file.open(0)) {
+            probe = in.readNBytes(bufferSize);
+        }
+        LogEntrySplitter entries = new LogEntrySplitter(new ByteArrayInputStream(probe), bufferSize, bufferSize);
+        LogHeader header = new LogHeader();
+        for (LogEntry entry = entries.next(); entry != null; entry = entries.next()) {
+            if (!entry.isEmpty()) {
+                header.parse(entry);
+                return header.getTimestampSeconds() != LogHeader.NO_TIMESTAMP;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Timestamp of the first complete entry within one buffer after the offset
+     */
+    private long firstTimestampAfter(RangeSource file, long offset) throws IOException {
+        byte[] probe;
+        try (InputStream in = file.open(offset)) {
+            probe = in.readNBytes(bufferSize);
+        }
+        LogEntrySplitter entries = new LogEntrySplitter(new ByteArrayInputStream(probe), bufferSize, bufferSize);
+        LogHeader header = new LogHeader();
+        boolean partial = offset > 0;
+        for (LogEntry entry = entries.next(); entry != null; entry = entries.next()) {
+            if (partial) {
+                partial = false;
+                continue;
+            }
+            header.parse(entry);
+            long timestamp = header.getTimestampSeconds();
+            if (timestamp != LogHeader.NO_TIMESTAMP) {
+                return timestamp;
+            }
+        }
+        return LogHeader.NO_TIMESTAMP;
+    }
+
+    private InputStream open(InputStream in, boolean gzip) throws IOException {
+        return gzip ? new GZIPInputStream(in, bufferSize) : in;
+    }
+
+    /**
+     * The next bytes of a stream, up to a length; closing it leaves the stream open
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller
+        }
+    }
+}
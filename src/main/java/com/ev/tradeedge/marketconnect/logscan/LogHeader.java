@@ -0,0 +1,291 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+/**
+ * Header fields of a log entry: timestamp, level, FileProcessId, Thread and TenantId.
+ * One instance is reused for every entry of a file. {@link #parse(LogEntry)} finds all fields
+ * in a single left-to-right scan and records where they are instead of copying them, so parsing
+ * allocates nothing; text is only created when a getter is called.
+ * <p>
+ * Recognized fields, first occurrence wins:
+ * <ul>
+ * <li>timestamp - "yyyy-MM-dd HH:mm:ss" (or with 'T'), optionally with fractional seconds, at the start</li>
+ * <li>level - TRACE, DEBUG, INFO, WARN, WARNING, ERROR or FATAL as a word on the first line</li>
+ * <li>FileProcessId:&lt;digits&gt;</li>
+ * <li>Thread: [&lt;name&gt;] (spaces allowed before the bracket)</li>
+ * <li>TenantId:&lt;digits&gt; or TenantId:-&lt;digits&gt;</li>
+ * </ul>
+ */
+public class LogHeader {
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final byte[] FPID_KEY = { 'F', 'i', 'l', 'e', 'P', 'r', 'o', 'c', 'e', 's', 's', 'I', 'd', ':' };
+    private static final byte[] THREAD_KEY = { 'T', 'h', 'r', 'e', 'a', 'd', ':' };
+    private static final byte[] TENANT_KEY = { 'T', 'e', 'n', 'a', 'n', 't', 'I', 'd', ':' };
+
+    private static final String[] LEVELS = { "TRACE", "DEBUG", "INFO", "WARNING", "WARN", "ERROR", "FATAL" };
+
+    private LogEntry entry;
+
+    private boolean hasFileProcessId;
+    private long fileProcessId;
+    private int threadStart = -1;
+    private int threadEnd;
+    private int tenantStart = -1;
+    private int tenantEnd;
+    private int timestampEnd;
+    private int levelStart = -1;
+    private int levelEnd;
+
+    /**
+     * Parse the header of an entry, replacing the previous values
+     * @param entry Entry to parse; the header refers to it until the next call
+     */
+    public void parse(LogEntry entry) {
+        this.entry = entry;
+        hasFileProcessId = false;
+        fileProcessId = 0;
+        threadStart = -1;
+        tenantStart = -1;
+        levelStart = -1;
+        timestampEnd = parseTimestamp(entry);
+
+        int length = entry.length();
+        boolean firstLine = true;
+        for (int i = timestampEnd; i < length; i++) {
+            byte b = entry.byteAt(i);
+            if (b == '\n') {
+                firstLine = false;
+            } else if (b == 'F' && !hasFileProcessId && startsWith(entry, i, FPID_KEY)) {
+                i = parseFileProcessId(entry, i + FPID_KEY.length) - 1;
+            } else if (b == 'T' && threadStart < 0 && startsWith(entry, i, THREAD_KEY)) {
+                i = parseThread(entry, i + THREAD_KEY.length) - 1;
+            } else if (b == 'T' && tenantStart < 0 && startsWith(entry, i, TENANT_KEY)) {
+                i = parseTenant(entry, i + TENANT_KEY.length) - 1;
+            } else if (firstLine && levelStart < 0 && isUpper(b) && (i == 0 || !isLetter(entry.byteAt(i - 1)))) {
+                parseLevel(entry, i);
+            }
+
+            if (hasFileProcessId && threadStart >= 0 && tenantStart >= 0 && (levelStart >= 0 || !firstLine)) {
+                return;
+            }
+        }
+    }
+
+    public boolean hasFileProcessId() {
+        return hasFileProcessId;
+    }
+
+    /**
+     * FileProcessId of the entry; only meaningful if {@link #hasFileProcessId()}
+     */
+    public long getFileProcessId() {
+        return fileProcessId;
+    }
+
+    public boolean hasThread() {
+        return threadStart >= 0;
+    }
+
+    public boolean hasTenantId() {
+        return tenantStart >= 0;
+    }
+
+    public String getThread() {
+        return threadStart >= 0 ? entry.substring(threadStart, threadEnd) : null;
+    }
+
+    public String getTenantId() {
+        return tenantStart >= 0 ? entry.substring(tenantStart, tenantEnd) : null;
+    }
+
+    public String getTimestamp() {
+        return timestampEnd > 0 ? entry.substring(0, timestampEnd) : null;
+    }
+
+    /**
+     * Timestamp as seconds since the epoch, reading the local time as if it were UTC.
+     * Only meant for comparing entries with a window parsed the same way.
+     * @return Seconds, or {@link #NO_TIMESTAMP} if the entry does not start with a timestamp
+     */
+    public long getTimestampSeconds() {
+        if (timestampEnd == 0) {
+            return NO_TIMESTAMP;
+        }
+        int year = digits(0, 4);
+        int month = digits(5, 2);
+        int day = digits(8, 2);
+        return epochDay(year, month, day) * 86400L + digits(11, 2) * 3600L + digits(14, 2) * 60L + digits(17, 2);
+    }
+
+    public String getLevel() {
+        return levelStart >= 0 ? entry.substring(levelStart, levelEnd) : null;
+    }
+
+    /**
+     * 64-bit hash of the thread and tenant, for correlating entries without creating strings
+     * @return The hash, or 0 if the entry has no thread or no tenant
+     */
+    public long threadTenantHash() {
+        if (threadStart < 0 || tenantStart < 0) {
+            return 0;
+        }
+        // FNV-1a over thread, a separator and tenant
+        long hash = 0xcbf29ce484222325L;
+        for (int i = threadStart; i < threadEnd; i++) {
+            hash = (hash ^ (entry.byteAt(i) & 0xff)) * 0x100000001b3L;
+        }
+        hash = (hash ^ ':') * 0x100000001b3L;
+        for (int i = tenantStart; i < tenantEnd; i++) {
+            hash = (hash ^ (entry.byteAt(i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private int digits(int at, int count) {
+        int value = 0;
+        for (int i = at; i < at + count; i++) {
+            value = value * 10 + (entry.byteAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private int parseFileProcessId(LogEntry entry, int i) {
+        long value = 0;
+        int digits = i;
+        while (i < entry.length() && isDigit(entry.byteAt(i)) && i - digits < 18) {
+            value = value * 10 + (entry.byteAt(i) - '0');
+            i++;
+        }
+        if (i > digits) {
+            hasFileProcessId = true;
+            fileProcessId = value;
+        }
+        return i;
+    }
+
+    private int parseThread(LogEntry entry, int i) {
+        int length = entry.length();
+        while (i < length && isWhitespace(entry.byteAt(i))) {
+            i++;
+        }
+        if (i >= length || entry.byteAt(i) != '[') {
+            return i;
+        }
+        int end = i + 1;
+        while (end < length && entry.byteAt(end) != ']') {
+            end++;
+        }
+        if (end < length && end > i + 1) {
+            threadStart = i + 1;
+            threadEnd = end;
+            return end + 1;
+        }
+        return i;
+    }
+
+    private int parseTenant(LogEntry entry, int i) {
+        int start = i;
+        if (i < entry.length() && entry.byteAt(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < entry.length() && isDigit(entry.byteAt(i))) {
+            i++;
+        }
+        if (i > digits) {
+            tenantStart = start;
+            tenantEnd = i;
+        }
+        return i;
+    }
+
+    private void parseLevel(LogEntry entry, int i) {
+        for (String level : LEVELS) {
+            int end = i + level.length();
+            if (end > entry.length() || (end < entry.length() && isLetter(entry.byteAt(end)))) {
+                continue;
+            }
+            int j = 0;
+            while (j < level.length() && entry.byteAt(i + j) == level.charAt(j)) {
+                j++;
+            }
+            if (j == level.length()) {
+                levelStart = i;
+                levelEnd = end;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Length of the timestamp at the start of the entry, or 0 if there is none
+     */
+    private static int parseTimestamp(LogEntry entry) {
+        // yyyy-MM-dd HH:mm:ss
+        if (entry.length() < 19) {
+            return 0;
+        }
+        for (int i = 0; i < 19; i++) {
+            byte b = entry.byteAt(i);
+            boolean ok;
+            switch (i) {
+                case 4, 7 -> ok = b == '-';
+                case 10 -> ok = b == ' ' || b == 'T';
+                case 13, 16 -> ok = b == ':';
+                default -> ok = isDigit(b);
+            }
+            if (!ok) {
+                return 0;
+            }
+        }
+        int end = 19;
+        if (end + 1 < entry.length() && (entry.byteAt(end) == ',' || entry.byteAt(end) == '.')
+                && isDigit(entry.byteAt(end + 1))) {
+            end++;
+            while (end < entry.length() && isDigit(entry.byteAt(end))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    private static boolean startsWith(LogEntry entry, int at, byte[] key) {
+        if (at + key.length > entry.length()) {
+            return false;
+        }
+        for (int j = 0; j < key.length; j++) {
+            if (entry.byteAt(at + j) != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0b;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isUpper(byte b) {
+        return b >= 'A' && b <= 'Z';
+    }
+
+    private static boolean isLetter(byte b) {
+        return isUpper(b) || (b >= 'a' && b <= 'z');
+    }
+}
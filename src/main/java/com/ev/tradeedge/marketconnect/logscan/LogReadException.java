@@ -0,0 +1,16 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.IOException;
+
+/**
+ * A log file could not be read or decompressed.
+ * Kept apart from other IOExceptions so that a broken file can be skipped while
+ * a failure to write the output (e.g. the client disconnected) still ends the scan.
+ */
+public class LogReadException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public LogReadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
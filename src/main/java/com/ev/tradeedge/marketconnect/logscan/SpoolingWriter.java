@@ -0,0 +1,101 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writer that keeps output in memory up to a threshold and then moves it to a temporary file.
+ * Used to hold the result of a file scan until it can be written out in order.
+ * Closing the writer deletes the temporary file; writing after close fails.
+ */
+public class SpoolingWriter extends Writer {
+    private final int threshold;
+    private StringBuilder buffer = new StringBuilder();
+    private Path file;
+    private Writer fileWriter;
+    private boolean closed;
+
+    public SpoolingWriter(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        if (fileWriter != null) {
+            fileWriter.write(cbuf, off, len);
+            return;
+        }
+        buffer.append(cbuf, off, len);
+        spillIfFull();
+    }
+
+    @Override
+    public synchronized void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        if (fileWriter != null) {
+            fileWriter.write(str, off, len);
+            return;
+        }
+        buffer.append(str, off, off + len);
+        spillIfFull();
+    }
+
+    /**
+     * Copy everything written so far to another writer
+     */
+    public synchronized void transferTo(Writer out) throws IOException {
+        ensureOpen();
+        if (fileWriter == null) {
+            out.append(buffer);
+            return;
+        }
+        fileWriter.flush();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.transferTo(out);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (fileWriter != null && !closed) {
+            fileWriter.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void spillIfFull() throws IOException {
+        if (buffer.length() <= threshold) {
+            return;
+        }
+        file = Files.createTempFile("log-extract-", ".spool");
+        fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        fileWriter.append(buffer);
+        buffer = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed");
+        }
+    }
+}
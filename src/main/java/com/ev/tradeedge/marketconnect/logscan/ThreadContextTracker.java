@@ -0,0 +1,71 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Bounded set of thread+tenant keys that recently appeared on matching entries.
+ * Only the key hash and the position of the last entry that touched it are kept, never entry text.
+ * The least recently touched key is dropped when the set is full, and a key stops matching once
+ * more than the window of entries has passed since it was last touched.
+ */
+class ThreadContextTracker {
+    private final long windowEntries;
+    private final LinkedHashMap<Long, Long> lastSeen;
+
+    /**
+     * @param maxKeys Most keys to keep
+     * @param windowEntries Entries after which a key expires, or 0 to keep keys for the whole file
+     */
+    ThreadContextTracker(int maxKeys, long windowEntries) {
+        this.windowEntries = windowEntries;
+        this.lastSeen = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    boolean isEmpty() {
+        return lastSeen.isEmpty();
+    }
+
+    /**
+     * Check whether any key kept in the set passes the test, without refreshing keys
+     */
+    boolean anyKey(LongPredicate test) {
+        for (long key : lastSeen.keySet()) {
+            if (test.test(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that a key was seen at the given entry position
+     */
+    void touch(long key, long entryIndex) {
+        lastSeen.put(key, entryIndex);
+    }
+
+    /**
+     * Check whether a key is still active at the given entry position, and refresh it if so
+     */
+    boolean matches(long key, long entryIndex) {
+        Long seen = lastSeen.get(key);
+        if (seen == null) {
+            return false;
+        }
+        if (windowEntries > 0 && entryIndex - seen > windowEntries) {
+            lastSeen.remove(key);
+            return false;
+        }
+        lastSeen.put(key, entryIndex);
+        return true;
+    }
+}
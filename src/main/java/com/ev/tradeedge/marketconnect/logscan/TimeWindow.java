@@ -0,0 +1,65 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Time range of the entries worth reading, in the seconds of {@link LogHeader#getTimestampSeconds()}
+ */
+public class TimeWindow {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final long fromSeconds;
+    private final long toSeconds;
+
+    public TimeWindow(long fromSeconds, long toSeconds) {
+        this.fromSeconds = fromSeconds;
+        this.toSeconds = toSeconds;
+    }
+
+    /**
+     * Build a window from "yyyy-MM-dd HH:mm:ss" times, widened on both sides by the slack
+     * @return The window, or null if either time cannot be parsed
+     */
+    public static TimeWindow parse(String startTime, String endTime, long slackMs) {
+        if (startTime == null || endTime == null) {
+            return null;
+        }
+        try {
+            long slack = slackMs / 1000;
+            long from = LocalDateTime.parse(startTime.trim(), FORMAT).toEpochSecond(ZoneOffset.UTC) - slack;
+            long to = LocalDateTime.parse(endTime.trim(), FORMAT).toEpochSecond(ZoneOffset.UTC) + slack;
+            return new TimeWindow(from, to);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public long getFromSeconds() {
+        return fromSeconds;
+    }
+
+    public long getToSeconds() {
+        return toSeconds;
+    }
+
+    /**
+     * Check whether an entry belongs to the window. Entries are judged by the timestamp in effect:
+     * their own, or for an entry without one that of the last stamped entry before it. Entries
+     * before the first stamped entry of a file have none and are kept.
+     * @param timestampSeconds Timestamp in effect, or {@link LogHeader#NO_TIMESTAMP}
+     */
+    public boolean contains(long timestampSeconds) {
+        return timestampSeconds == LogHeader.NO_TIMESTAMP
+            || (timestampSeconds >= fromSeconds && timestampSeconds <= toSeconds);
+    }
+
+    /**
+     * Check whether an entry with this timestamp comes after the window; entries without one never do
+     */
+    public boolean isAfter(long timestampSeconds) {
+        return timestampSeconds != LogHeader.NO_TIMESTAMP && timestampSeconds > toSeconds;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ev.tradeedge.marketconnect.model;
+
+import java.util.List;
+
+public class DatabaseActivity {
+    private Database database;
+    private List<Query> queries;
+    private String error;
+    private long elapsedMs;
+
+    // Constructors
+    public DatabaseActivity() {
+    }
+
+    public DatabaseActivity(Database database, List<Query> queries, String error, long elapsedMs) {
+        this.database = database;
+        this.queries = queries;
+        this.error = error;
+        this.elapsedMs = elapsedMs;
+    }
+
+    // Getters and setters
+    public Database getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(Database database) {
+        this.database = database;
+    }
+
+    public List<Query> getQueries() {
+        return queries;
+    }
+
+    public void setQueries(List<Query> queries) {
+        this.queries = queries;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 
 public class LogExtractRequest {
     private String fpid;
+    private List<String> fpids; // Several FPIDs in one scan; fpid is used when this is empty
     private List<String> services;
     private String server;
     private Map<String, String> timeRange;
@@ -19,6 +20,14 @@ public class LogExtractRequest {
         this.fpid = fpid;
     }
 
+    public List<String> getFpids() {
+        return fpids;
+    }
+
+    public void setFpids(List<String> fpids) {
+        this.fpids = fpids;
+    }
+
     public List<String> getServices() {
         return services;
     }
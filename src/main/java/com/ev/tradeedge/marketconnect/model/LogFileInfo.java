@@ -0,0 +1,58 @@
+package com.ev.tradeedge.marketconnect.model;
+
+public class LogFileInfo {
+    private String serviceName;
+    private String path;
+    private long size;
+    private long modifiedTime;
+
+    // Constructors
+    public LogFileInfo() {
+    }
+
+    public LogFileInfo(String serviceName, String path, long size, long modifiedTime) {
+        this.serviceName = serviceName;
+        this.path = path;
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+    }
+
+    // Getters and setters
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * File size in bytes, or -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Last modification time in epoch milliseconds, or 0 if unknown
+     */
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public void setModifiedTime(long modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+}
@@ -3,6 +3,7 @@ package com.ev.tradeedge.marketconnect.repository;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -57,6 +58,19 @@ public class UserRepository {
         jdbcTemplate.update(sql, new Timestamp(System.currentTimeMillis()), username);
     }
 
+    /**
+     * Set the last login time of several users in one batch
+     * @param lastLogins Username to login time in milliseconds
+     */
+    public void updateLastLogins(Map<String, Long> lastLogins) {
+        String sql = "UPDATE public.users SET last_login = ? WHERE username = ?";
+        List<Object[]> args = new ArrayList<>(lastLogins.size());
+        for (Map.Entry<String, Long> login : lastLogins.entrySet()) {
+            args.add(new Object[] { new Timestamp(login.getValue()), login.getKey() });
+        }
+        jdbcTemplate.batchUpdate(sql, args);
+    }
+
     public boolean existsByUsername(String username) {
         String sql = "SELECT COUNT(*) FROM public.users WHERE username = ?";
         Integer count = jdbcTemplate.queryForObject(sql, Integer.class, username);
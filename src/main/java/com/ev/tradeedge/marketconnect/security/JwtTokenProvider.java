@@ -11,12 +11,16 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
@@ -28,6 +32,30 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration:86400000}")
     private long jwtExpirationMs;
 
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    // Built once from the secret; JwtParser is immutable and thread-safe
+    private Key signingKey;
+    private JwtParser jwtParser;
+
+    // Token -> authentication of recently seen tokens, least recently used first
+    private Map<String, CachedAuthentication> authenticationCache;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        authenticationCache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAuthentication> eldest) {
+                return size() > cacheMaxEntries;
+            }
+        };
+    }
+
     public String generateToken(Authentication authentication) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
         
@@ -49,18 +77,14 @@ public class JwtTokenProvider {
     }
 
     public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
 
         return claims.getSubject();
     }
 
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token);
+            jwtParser.parseClaimsJws(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
@@ -68,17 +92,50 @@ public class JwtTokenProvider {
     }
 
     private Key getSigningKey() {
-        byte[] keyBytes = jwtSecret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
+    }
+
+    /**
+     * Verify a token and build its authentication, parsing the token only the first time it is seen.
+     * Verified tokens are cached until they expire, so repeated requests with the same token cost
+     * a map lookup.
+     * @param token JWT from the request
+     * @return Authentication, or null if the token is invalid or expired
+     */
+    public Authentication authenticate(String token) {
+        long now = System.currentTimeMillis();
+        synchronized (authenticationCache) {
+            CachedAuthentication cached = authenticationCache.get(token);
+            if (cached != null) {
+                if (now < cached.expiresAt) {
+                    return cached.authentication;
+                }
+                authenticationCache.remove(token);
+            }
+        }
+
+        Claims claims;
+        try {
+            claims = jwtParser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        Authentication authentication = toAuthentication(claims, token);
+
+        // Tokens without an expiry are verified every time
+        if (claims.getExpiration() != null) {
+            synchronized (authenticationCache) {
+                authenticationCache.put(token, new CachedAuthentication(authentication, claims.getExpiration().getTime()));
+            }
+        }
+        return authentication;
     }
 
     public Authentication getAuthentication(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return toAuthentication(jwtParser.parseClaimsJws(token).getBody(), token);
+    }
 
+    private Authentication toAuthentication(Claims claims, String token) {
         // Add null check for roles claim
         Collection<? extends GrantedAuthority> authorities;
         String rolesString = claims.get("roles", String.class);
@@ -97,4 +154,14 @@ public class JwtTokenProvider {
 
         return new UsernamePasswordAuthenticationToken(principal, token, authorities);
     }
+
+    private static class CachedAuthentication {
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        CachedAuthentication(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
\ No newline at end of file
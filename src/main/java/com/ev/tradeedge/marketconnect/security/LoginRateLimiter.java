@@ -0,0 +1,97 @@
+package com.ev.tradeedge.marketconnect.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token buckets limiting login attempts per username and per client address. Each attempt takes
+ * one token from both buckets; buckets refill continuously up to their capacity. Full buckets are
+ * dropped periodically, so memory only grows with clients that recently attempted to log in.
+ */
+@Component
+public class LoginRateLimiter {
+
+    @Value("${auth.login.rate-limit.user.capacity:5}")
+    private int userCapacity;
+
+    @Value("${auth.login.rate-limit.user.refill-per-minute:5}")
+    private double userRefillPerMinute;
+
+    @Value("${auth.login.rate-limit.ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${auth.login.rate-limit.ip.refill-per-minute:30}")
+    private double ipRefillPerMinute;
+
+    private final Map<String, Bucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> ipBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * Take a token for a login attempt
+     * @param username Username the client tries to log in as
+     * @param clientAddress Remote address of the client
+     * @return 0 if the attempt may proceed, otherwise seconds until it may be retried
+     */
+    public long tryAcquire(String username, String clientAddress) {
+        long now = System.nanoTime();
+        // Check the address first, so a client cycling through usernames does not drain their buckets
+        long ipWait = ipBuckets.computeIfAbsent(clientAddress, k -> new Bucket(ipCapacity, now))
+            .tryTake(ipCapacity, ipRefillPerMinute, now);
+        if (ipWait > 0) {
+            return ipWait;
+        }
+        // Usernames are case-insensitive for limiting, so case variants share one bucket
+        String user = username != null ? username.toLowerCase() : "";
+        return userBuckets.computeIfAbsent(user, k -> new Bucket(userCapacity, now))
+            .tryTake(userCapacity, userRefillPerMinute, now);
+    }
+
+    /**
+     * Drop buckets that have refilled completely; they behave like new ones
+     */
+    @Scheduled(fixedDelayString = "${auth.login.rate-limit.cleanup-interval-ms:60000}")
+    public void removeFullBuckets() {
+        long now = System.nanoTime();
+        userBuckets.values().removeIf(bucket -> bucket.isFull(userCapacity, userRefillPerMinute, now));
+        ipBuckets.values().removeIf(bucket -> bucket.isFull(ipCapacity, ipRefillPerMinute, now));
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        Bucket(int capacity, long now) {
+            this.tokens = capacity;
+            this.updatedAt = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise seconds until one is available
+         */
+        synchronized long tryTake(int capacity, double refillPerMinute, long now) {
+            refill(capacity, refillPerMinute, now);
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            if (refillPerMinute <= 0) {
+                return 60;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 60 / refillPerMinute));
+        }
+
+        synchronized boolean isFull(int capacity, double refillPerMinute, long now) {
+            refill(capacity, refillPerMinute, now);
+            return tokens >= capacity;
+        }
+
+        private void refill(int capacity, double refillPerMinute, long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) / 60e9 * refillPerMinute);
+            updatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.ev.tradeedge.marketconnect.security;
+
+/**
+ * A login attempt was refused without checking the password, because the client or user made
+ * too many attempts or too many logins are already being verified.
+ */
+public class LoginThrottledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Seconds the client should wait before trying again
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
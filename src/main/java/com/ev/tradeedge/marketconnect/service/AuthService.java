@@ -1,84 +1,174 @@
 package com.ev.tradeedge.marketconnect.service;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import com.ev.tradeedge.marketconnect.config.VirtualThreads;
 import com.ev.tradeedge.marketconnect.model.auth.AuthRequest;
 import com.ev.tradeedge.marketconnect.model.auth.AuthResponse;
 import com.ev.tradeedge.marketconnect.model.auth.RegisterRequest;
 import com.ev.tradeedge.marketconnect.repository.UserRepository;
 import com.ev.tradeedge.marketconnect.security.JwtTokenProvider;
+import com.ev.tradeedge.marketconnect.security.LoginRateLimiter;
+import com.ev.tradeedge.marketconnect.security.LoginThrottledException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class AuthService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
+
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider tokenProvider;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final LoginRateLimiter loginRateLimiter;
+    private final VirtualThreads virtualThreads;
+
+    @Value("${auth.login.hash-threads:0}")
+    private int hashThreads;
+
+    @Value("${auth.login.hash-queue-size:64}")
+    private int hashQueueSize;
+
+    @Value("${auth.login.timeout-ms:10000}")
+    private long loginTimeoutMs;
+
+    private ThreadPoolExecutor hashExecutor;
+
+    // Username -> time of the latest login not yet written to the database
+    private final Map<String, Long> pendingLastLogins = new ConcurrentHashMap<>();
 
     public AuthService(
             AuthenticationManager authenticationManager,
             JwtTokenProvider tokenProvider,
             UserRepository userRepository,
-            PasswordEncoder passwordEncoder) {
+            PasswordEncoder passwordEncoder,
+            LoginRateLimiter loginRateLimiter,
+            VirtualThreads virtualThreads) {
         this.authenticationManager = authenticationManager;
         this.tokenProvider = tokenProvider;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.loginRateLimiter = loginRateLimiter;
+        this.virtualThreads = virtualThreads;
     }
 
-    public AuthResponse login(AuthRequest loginRequest) {
+    @PostConstruct
+    public void init() {
+        // BCrypt is CPU-bound: a few platform threads, by default half the processors, leave the rest
+        // for requests of users who are already logged in
+        int threads = hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        hashExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(hashQueueSize), virtualThreads.platformThreadFactory());
+        hashExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+        flushLastLogins();
+    }
+
+    /**
+     * Check a username and password and issue a token.
+     * Attempts are rate limited per user and per client address, and passwords are verified on a
+     * small dedicated pool, so that a burst of logins cannot take the CPU from other requests.
+     * @param loginRequest Username and password
+     * @param clientAddress Remote address of the client, for rate limiting
+     * @throws LoginThrottledException If the attempt was refused without checking the password
+     */
+    public AuthResponse login(AuthRequest loginRequest, String clientAddress) {
+        long retryAfter = loginRateLimiter.tryAcquire(loginRequest.getUsername(), clientAddress);
+        if (retryAfter > 0) {
+            throw new LoginThrottledException("Too many login attempts, try again later", retryAfter);
+        }
+
+        // Verify the password (user lookup and BCrypt) on the hashing pool
+        UsernamePasswordAuthenticationToken credentials = new UsernamePasswordAuthenticationToken(
+            loginRequest.getUsername(),
+            loginRequest.getPassword()
+        );
+        Future<Authentication> verification;
         try {
-            // Check if user exists
-            Optional<Map<String, Object>> userOpt = userRepository.findByUsername(loginRequest.getUsername());
-            
-            if (userOpt.isEmpty()) {
+            verification = hashExecutor.submit(() -> authenticationManager.authenticate(credentials));
+        } catch (RejectedExecutionException e) {
+            throw new LoginThrottledException("Too many logins in progress, try again later", 1);
+        }
+
+        Authentication authentication;
+        try {
+            authentication = verification.get(loginTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BadCredentialsException) {
                 return new AuthResponse(false, null, "Invalid username or password");
             }
-            
-            Map<String, Object> user = userOpt.get();
-            
-            // Create authentication object
-            @SuppressWarnings("unused")
-			UserDetails userDetails = new User(
-                loginRequest.getUsername(),
-                user.get("password").toString(),
-                Collections.singletonList(new SimpleGrantedAuthority(
-                    (Boolean) user.get("is_admin") ? "ROLE_ADMIN" : "ROLE_USER"
-                ))
-            );
-            
-            // Authenticate
-            Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                    loginRequest.getUsername(),
-                    loginRequest.getPassword()
-                )
-            );
-            
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            
-            // Generate JWT token
-            String jwt = tokenProvider.generateToken(authentication);
-            
-            // Update last login time
-            userRepository.updateLastLogin(loginRequest.getUsername());
-            
-            return new AuthResponse(true, jwt, "Login successful");
-        } catch (Exception e) {
-            return new AuthResponse(false, null, "Authentication failed: " + e.getMessage());
+            return new AuthResponse(false, null, "Authentication failed: " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            verification.cancel(true);
+            return new AuthResponse(false, null, "Authentication failed: login timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            verification.cancel(true);
+            return new AuthResponse(false, null, "Authentication failed: interrupted");
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        // Generate JWT token
+        String jwt = tokenProvider.generateToken(authentication);
+
+        // Last login times are written in batches by flushLastLogins
+        pendingLastLogins.put(authentication.getName(), System.currentTimeMillis());
+
+        return new AuthResponse(true, jwt, "Login successful");
+    }
+
+    /**
+     * Write the last login times recorded since the previous flush in one batch
+     */
+    @Scheduled(fixedDelayString = "${auth.login.last-login-flush-ms:5000}")
+    public void flushLastLogins() {
+        if (pendingLastLogins.isEmpty()) {
+            return;
+        }
+        Map<String, Long> batch = new HashMap<>();
+        for (Map.Entry<String, Long> login : pendingLastLogins.entrySet()) {
+            // Only take the entry if no newer login replaced it meanwhile
+            if (pendingLastLogins.remove(login.getKey(), login.getValue())) {
+                batch.put(login.getKey(), login.getValue());
+            }
+        }
+        try {
+            userRepository.updateLastLogins(batch);
+        } catch (DataAccessException e) {
+            logger.warn("Could not update last login of {} users, retrying later: {}", batch.size(), e.getMessage());
+            for (Map.Entry<String, Long> login : batch.entrySet()) {
+                pendingLastLogins.merge(login.getKey(), login.getValue(), Math::max);
+            }
         }
     }
 
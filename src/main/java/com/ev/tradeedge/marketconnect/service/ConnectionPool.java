@@ -0,0 +1,107 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * A bounded connection pool for one database target together with its borrow metrics
+ */
+class ConnectionPool {
+    private final HikariDataSource dataSource;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong totalBorrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+    ConnectionPool(HikariDataSource dataSource, String url, String user, String password) {
+        this.dataSource = dataSource;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Check whether this pool was created for the given target and credentials
+     */
+    boolean matches(String url, String user, String password) {
+        return this.url.equals(url) && Objects.equals(this.user, user) && Objects.equals(this.password, password);
+    }
+
+    Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection conn = dataSource.getConnection();
+            borrowCount.incrementAndGet();
+            return conn;
+        } catch (SQLTransientConnectionException e) {
+            borrowTimeouts.incrementAndGet();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            totalBorrowNanos.addAndGet(elapsed);
+            maxBorrowNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    int activeConnections() {
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        return mxBean != null ? mxBean.getActiveConnections() : 0;
+    }
+
+    int totalConnections() {
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        return mxBean != null ? mxBean.getTotalConnections() : 0;
+    }
+
+    int idleConnections() {
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        return mxBean != null ? mxBean.getIdleConnections() : 0;
+    }
+
+    /**
+     * Close the idle connections now; connections in use are closed when they are returned
+     */
+    void evictConnections() {
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        if (mxBean != null) {
+            mxBean.softEvictConnections();
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("url", url);
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        if (mxBean != null) {
+            stats.put("active", mxBean.getActiveConnections());
+            stats.put("idle", mxBean.getIdleConnections());
+            stats.put("total", mxBean.getTotalConnections());
+            stats.put("waiting", mxBean.getThreadsAwaitingConnection());
+        }
+        long borrows = borrowCount.get();
+        long timeouts = borrowTimeouts.get();
+        long attempts = borrows + timeouts;
+        stats.put("borrows", borrows);
+        stats.put("borrowTimeouts", timeouts);
+        stats.put("avgBorrowMs", attempts == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalBorrowNanos.get() / attempts));
+        stats.put("maxBorrowMs", TimeUnit.NANOSECONDS.toMillis(maxBorrowNanos.get()));
+        return stats;
+    }
+
+    void close() {
+        dataSource.close();
+    }
+}
@@ -1,111 +1,110 @@
 package com.ev.tradeedge.marketconnect.service;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.ev.tradeedge.marketconnect.model.Config;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.pool.HikariPool;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class DatabaseService {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseService.class);
-    
+
     private final ConfigService configService;
-    
-    // Cache connections to avoid creating new ones for every request
-    private final Map<String, Connection> connectionCache = new HashMap<>();
-   
-    public DatabaseService(ConfigService configService) {
+    private final TenantConnectionRegistry tenantRegistry;
+
+    // One bounded pool per meta DB (staging/production); tenant pools live in the tenant registry
+    private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    @Value("${db.pool.min-idle:1}")
+    private int minIdle;
+
+    @Value("${db.pool.max-size:10}")
+    private int maxPoolSize;
+
+    @Value("${db.pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${db.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    @Value("${db.pool.validation-timeout-ms:3000}")
+    private long validationTimeoutMs;
+
+    public DatabaseService(ConfigService configService, TenantConnectionRegistry tenantRegistry) {
         this.configService = configService;
+        this.tenantRegistry = tenantRegistry;
     }
-    
+
     /**
-     * Get a connection to the main database (meta DB)
+     * Get a connection to the main database (meta DB).
+     * The connection is borrowed from a pool and must be closed by the caller to return it.
      * @param serverType "staging" or "production"
      * @return A database connection
      */
     public Connection getMainDbConnection(String serverType) throws SQLException {
         String cacheKey = serverType + "-main";
-        
-        // Check if we have a cached connection that is still valid
-        if (connectionCache.containsKey(cacheKey)) {
-            Connection conn = connectionCache.get(cacheKey);
-            if (conn != null && !conn.isClosed()) {
-                return conn;
-            }
-            // Remove invalid connection from cache
-            connectionCache.remove(cacheKey);
-        }
-        
+
         // Get configuration
         Config config = configService.getConfig();
-        
+
         // Check if config is null
         if (config == null) {
             logger.error("Configuration is null. Make sure config.json exists and is properly loaded.");
             throw new SQLException("Database configuration not found");
         }
-        
+
         // Check if db config is null
         Config.DbConfig dbConfig = config.getDb();
         if (dbConfig == null) {
             logger.error("Database configuration is null in config.json");
             throw new SQLException("Database configuration not found in config.json");
         }
-        
+
         // Build connection URL based on server type
         String host, user, port, database, password;
-        
+
         if ("staging".equals(serverType)) {
             host = dbConfig.getStagingHost();
             user = dbConfig.getStagingUser();
             port = dbConfig.getStagingPort();
             database = dbConfig.getStagingDatabase();
             password = dbConfig.getStagingPassword();
-            
-            logger.info("Using STAGING database configuration");
         } else {
             host = dbConfig.getProdHost();
             user = dbConfig.getProdUser();
             port = dbConfig.getProdPort();
             database = dbConfig.getProdDatabase();
             password = dbConfig.getProdPassword();
-            
-            logger.info("Using PRODUCTION database configuration");
         }
-        
-        // Log the connection details (without password)
-        logger.debug("Connecting to database - Host: {}, Port: {}, Database: {}, User: {}", 
-                     host, port, database, user);
-        
+
         // Check for null values
         if (host == null || port == null || database == null) {
-            logger.error("Database connection parameters are null - Host: {}, Port: {}, Database: {}", 
+            logger.error("Database connection parameters are null - Host: {}, Port: {}, Database: {}",
                          host, port, database);
             throw new SQLException("Database connection parameters cannot be null");
         }
-        
+
         String url = String.format("jdbc:postgresql://%s:%s/%s", host, port, database);
-        
-        logger.info("Connecting to main database at {}", url);
-        
-        // Create new connection
-        Connection conn = DriverManager.getConnection(url, user, password);
-        
-        // Cache the connection
-        connectionCache.put(cacheKey, conn);
-        
-        return conn;
+
+        return getPool(cacheKey, url, user, password, minIdle).borrow();
     }
-    
+
     /**
-     * Get a connection to a tenant database
+     * Get a connection to a tenant database.
+     * The connection is borrowed from a pool and must be closed by the caller to return it.
      * @param host Database host (server name from tenant_datasource)
      * @param port Database port
      * @param database Database name
@@ -115,59 +114,111 @@ public class DatabaseService {
     public Connection getTenantDbConnection(String host, String port, String database, String user) throws SQLException {
         // Map the host to IP if needed - this is the key part for tenant databases
         String hostIp = configService.getServerIp(host);
-        
+
         String cacheKey = String.format("%s-%s-%s-%s", hostIp, port, database, user);
-        
-        // Check if we have a cached connection that is still valid
-        if (connectionCache.containsKey(cacheKey)) {
-            Connection conn = connectionCache.get(cacheKey);
-            if (conn != null && !conn.isClosed()) {
-                return conn;
-            }
-            // Remove invalid connection from cache
-            connectionCache.remove(cacheKey);
-        }
-        
+
         // Get configuration
         Config config = configService.getConfig();
-        
+
         // Determine which tenant password to use based on the host
         // This is a simple heuristic - you might need a more sophisticated approach
         String password;
         if (host.contains("mcmstg") || hostIp.startsWith("192.168.")) {
             password = config.getDb().getStagingTenantPassword();
-            logger.info("Using STAGING tenant password for host: {}", host);
         } else {
             password = config.getDb().getProdTenantPassword();
-            logger.info("Using PRODUCTION tenant password for host: {}", host);
         }
-        
+
         String url = String.format("jdbc:postgresql://%s:%s/%s", hostIp, port, database);
-        
-        logger.info("Connecting to tenant database at {} (mapped from {})", url, host);
-        
-        // Create new connection
-        Connection conn = DriverManager.getConnection(url, user, password);
-        
-        // Cache the connection
-        connectionCache.put(cacheKey, conn);
-        
-        return conn;
+
+        // Tenant pools start empty; there can be many of them and most are rarely used
+        return tenantRegistry.borrow(hostIp, cacheKey, url, user, password,
+            (maxSize, poolIdleTimeoutMs) -> createPool(cacheKey, url, user, password, 0, maxSize, poolIdleTimeoutMs));
     }
-    
+
+    /**
+     * Get pool statistics for every open pool, keyed by pool name
+     * @return Active/idle/total/waiting connection counts and borrow metrics per pool
+     */
+    public Map<String, Map<String, Object>> getPoolStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        pools.forEach((key, pool) -> stats.put(key, pool.stats()));
+        stats.putAll(tenantRegistry.getPoolStats());
+        return stats;
+    }
+
     /**
-     * Close all cached connections
+     * Get tenant connection counts per database server
+     * @return Pools, open connections, connections in use and free slots keyed by server IP
      */
+    public Map<String, Map<String, Object>> getTenantServerCounts() {
+        return tenantRegistry.getServerCounts();
+    }
+
+    /**
+     * Close all connection pools
+     */
+    @PreDestroy
     public void closeAllConnections() {
-        for (Connection conn : connectionCache.values()) {
-            try {
-                if (conn != null && !conn.isClosed()) {
-                    conn.close();
-                }
-            } catch (SQLException e) {
-                logger.error("Error closing database connection", e);
+        for (ConnectionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+        tenantRegistry.closeAll();
+    }
+
+    /**
+     * Get the pool for a target, creating it on first use or replacing it if the credentials changed
+     */
+    private ConnectionPool getPool(String key, String url, String user, String password, int poolMinIdle)
+            throws SQLException {
+        ConnectionPool pool = pools.get(key);
+        if (pool != null && pool.matches(url, user, password)) {
+            return pool;
+        }
+
+        ConnectionPool created = createPool(key, url, user, password, poolMinIdle, maxPoolSize, idleTimeoutMs);
+
+        // Another request may have created the pool concurrently - keep whichever got there first
+        ConnectionPool[] replaced = new ConnectionPool[1];
+        ConnectionPool winner = pools.compute(key, (k, current) -> {
+            if (current != null && current.matches(url, user, password)) {
+                return current;
             }
+            replaced[0] = current;
+            return created;
+        });
+        if (winner != created) {
+            created.close();
+        }
+        if (replaced[0] != null) {
+            logger.info("Configuration changed for pool {}. Replacing it.", key);
+            replaced[0].close();
+        }
+        return winner;
+    }
+
+    private ConnectionPool createPool(String key, String url, String user, String password, int poolMinIdle,
+                                      int poolMaxSize, long poolIdleTimeoutMs) throws SQLException {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(key);
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername(user);
+        hikariConfig.setPassword(password);
+        hikariConfig.setMinimumIdle(Math.min(poolMinIdle, poolMaxSize));
+        hikariConfig.setMaximumPoolSize(poolMaxSize);
+        hikariConfig.setIdleTimeout(poolIdleTimeoutMs);
+        hikariConfig.setConnectionTimeout(borrowTimeoutMs);
+        // Connections idle for more than 500ms are validated with Connection.isValid() on borrow
+        hikariConfig.setValidationTimeout(validationTimeoutMs);
+
+        logger.info("Creating connection pool {} for {} (min idle {}, max {})",
+                    key, url, hikariConfig.getMinimumIdle(), poolMaxSize);
+
+        try {
+            return new ConnectionPool(new HikariDataSource(hikariConfig), url, user, password);
+        } catch (HikariPool.PoolInitializationException e) {
+            throw new SQLException("Failed to connect to " + url, e.getCause() != null ? e.getCause() : e);
         }
-        connectionCache.clear();
     }
 }
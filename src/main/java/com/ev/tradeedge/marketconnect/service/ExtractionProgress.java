@@ -0,0 +1,101 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a running log extraction, updated by the scan workers and safe to read at any time
+ */
+public class ExtractionProgress {
+    private final AtomicInteger filesDiscovered = new AtomicInteger();
+    private final AtomicInteger filesOpened = new AtomicInteger();
+    private final AtomicInteger filesScanned = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong entriesMatched = new AtomicLong();
+
+    void addFilesDiscovered(int count) {
+        filesDiscovered.addAndGet(count);
+    }
+
+    void fileOpened() {
+        filesOpened.incrementAndGet();
+    }
+
+    void fileScanned() {
+        filesScanned.incrementAndGet();
+    }
+
+    void fileFailed() {
+        filesFailed.incrementAndGet();
+    }
+
+    void addEntriesMatched(long count) {
+        entriesMatched.addAndGet(count);
+    }
+
+    /**
+     * Wrap a file stream so that the bytes read from it are counted
+     */
+    InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesRead.addAndGet(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    public int getFilesDiscovered() {
+        return filesDiscovered.get();
+    }
+
+    public int getFilesOpened() {
+        return filesOpened.get();
+    }
+
+    public int getFilesScanned() {
+        return filesScanned.get();
+    }
+
+    public int getFilesFailed() {
+        return filesFailed.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getEntriesMatched() {
+        return entriesMatched.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("filesDiscovered", getFilesDiscovered());
+        map.put("filesOpened", getFilesOpened());
+        map.put("filesScanned", getFilesScanned());
+        map.put("filesFailed", getFilesFailed());
+        map.put("bytesRead", getBytesRead());
+        map.put("entriesMatched", getEntriesMatched());
+        return map;
+    }
+}
@@ -0,0 +1,366 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.ev.tradeedge.marketconnect.config.VirtualThreads;
+import com.ev.tradeedge.marketconnect.model.LogExtractRequest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs log extractions as background jobs, so that a long extraction does not hold an HTTP
+ * request open. Each job writes its result to a temporary file as the files are scanned;
+ * the result can be read in pages while the job runs and after it finished, and reading can
+ * resume from the offset of the last page. Finished jobs are deleted after the retention time.
+ * <p>
+ * Every job belongs to the user who submitted it. Other users see it as missing, except
+ * administrators, who can see and manage all jobs.
+ */
+@org.springframework.stereotype.Service
+public class LogExtractionJobService {
+    private static final Logger logger = LoggerFactory.getLogger(LogExtractionJobService.class);
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    private final LogToolService logToolService;
+    private final VirtualThreads virtualThreads;
+
+    @Value("${log-tool.jobs.concurrency:2}")
+    private int concurrency;
+
+    @Value("${log-tool.jobs.queue-size:20}")
+    private int queueSize;
+
+    @Value("${log-tool.jobs.retention-ms:3600000}")
+    private long retentionMs;
+
+    @Value("${log-tool.jobs.max-page-bytes:4194304}")
+    private int maxPageBytes;
+
+    private ThreadPoolExecutor jobExecutor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public LogExtractionJobService(LogToolService logToolService, VirtualThreads virtualThreads) {
+        this.logToolService = logToolService;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Jobs mostly wait for the scan workers and write files, so they can run on virtual threads
+        jobExecutor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueSize), virtualThreads.threadFactory("log-job"));
+        jobExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        for (Job job : jobs.values()) {
+            job.deleteResult();
+        }
+    }
+
+    /**
+     * Queue an extraction
+     * @param request Extraction request
+     * @param owner Name of the submitting user
+     * @return Status of the new job
+     * @throws IllegalStateException If too many jobs are already waiting
+     * @throws IOException If the result file cannot be created
+     */
+    public Map<String, Object> submit(LogExtractRequest request, String owner) throws IOException {
+        Job job = new Job(UUID.randomUUID().toString(), request, owner, Files.createTempFile("log-job-", ".txt"));
+        jobs.put(job.id, job);
+        try {
+            job.future = jobExecutor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            job.deleteResult();
+            throw new IllegalStateException("Too many log extraction jobs queued, try again later");
+        }
+        logger.info("Queued log extraction job {} for {}", job.id, owner);
+        return job.toMap();
+    }
+
+    /**
+     * Get the status and progress of a job
+     * @param user Name of the requesting user
+     * @param admin Whether the user may access every job
+     * @return Job status, or null if there is no such job for the user
+     */
+    public Map<String, Object> getStatus(String jobId, String user, boolean admin) {
+        Job job = find(jobId, user, admin);
+        return job != null ? job.toMap() : null;
+    }
+
+    /**
+     * Get the status of the user's jobs, or of all jobs for an administrator, newest first
+     */
+    public List<Map<String, Object>> getJobs(String user, boolean admin) {
+        List<Job> all = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.isAccessibleBy(user, admin)) {
+                all.add(job);
+            }
+        }
+        all.sort((a, b) -> Long.compare(b.createdAt, a.createdAt));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Job job : all) {
+            result.add(job.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * Read a page of a job's result. Results grow while the job runs, so a client can keep
+     * polling with the returned nextOffset until complete is true.
+     * @param jobId Job id
+     * @param offset Byte offset in the result to start at
+     * @param limit Most bytes to return; pages end on a character boundary
+     * @param user Name of the requesting user
+     * @param admin Whether the user may access every job
+     * @return Page with content, offset, nextOffset, size and complete, or null if there is no such job for the user
+     */
+    public Map<String, Object> getResult(String jobId, long offset, int limit, String user, boolean admin)
+            throws IOException {
+        Job job = find(jobId, user, admin);
+        if (job == null) {
+            return null;
+        }
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit > 0");
+        }
+
+        // Read the status before the size, so a finished job's size is final
+        Status status = job.status;
+        byte[] page;
+        long size;
+        try (FileChannel channel = FileChannel.open(job.result, StandardOpenOption.READ)) {
+            size = channel.size();
+            long start = Math.min(offset, size);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Math.min(limit, maxPageBytes), size - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // keep reading until the page is full
+            }
+            page = buffer.array();
+        }
+
+        int length = utf8Boundary(page, page.length, offset + page.length < size);
+        long nextOffset = Math.min(offset, size) + length;
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jobId", jobId);
+        response.put("status", status);
+        response.put("offset", offset);
+        response.put("nextOffset", nextOffset);
+        response.put("size", size);
+        response.put("complete", status != Status.QUEUED && status != Status.RUNNING && nextOffset >= size);
+        response.put("content", new String(page, 0, length, StandardCharsets.UTF_8));
+        return response;
+    }
+
+    /**
+     * Cancel a job; its result so far stays readable until it is deleted
+     * @param user Name of the requesting user
+     * @param admin Whether the user may access every job
+     * @return false if there is no such job for the user
+     */
+    public boolean cancel(String jobId, String user, boolean admin) {
+        Job job = find(jobId, user, admin);
+        if (job == null) {
+            return false;
+        }
+        synchronized (job) {
+            if (job.status == Status.QUEUED || job.status == Status.RUNNING) {
+                job.status = Status.CANCELLED;
+                job.finishedAt = System.currentTimeMillis();
+            }
+        }
+        if (job.future != null) {
+            job.future.cancel(true);
+        }
+        logger.info("Cancelled log extraction job {} for {}", jobId, user);
+        return true;
+    }
+
+    /**
+     * Delete a job and its result
+     * @param user Name of the requesting user
+     * @param admin Whether the user may access every job
+     * @return false if there is no such job for the user
+     */
+    public boolean delete(String jobId, String user, boolean admin) {
+        if (!cancel(jobId, user, admin)) {
+            return false;
+        }
+        Job job = jobs.remove(jobId);
+        if (job != null) {
+            job.deleteResult();
+        }
+        return true;
+    }
+
+    /**
+     * Delete finished jobs older than the retention time
+     */
+    @Scheduled(fixedDelayString = "${log-tool.jobs.cleanup-interval-ms:60000}")
+    public void removeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        for (Job job : jobs.values()) {
+            if (job.finishedAt > 0 && job.finishedAt < cutoff) {
+                jobs.remove(job.id);
+                job.deleteResult();
+                logger.info("Removed expired log extraction job {}", job.id);
+            }
+        }
+    }
+
+    /**
+     * Get a job if the user may access it
+     */
+    private Job find(String jobId, String user, boolean admin) {
+        Job job = jobs.get(jobId);
+        return job != null && job.isAccessibleBy(user, admin) ? job : null;
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.status != Status.QUEUED) {
+                return;
+            }
+            job.status = Status.RUNNING;
+            job.startedAt = System.currentTimeMillis();
+        }
+
+        Status status;
+        String error = null;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(job.result, StandardOpenOption.APPEND), StandardCharsets.UTF_8))) {
+            // extractLogs flushes after every file, which makes the result readable as it grows
+            logToolService.extractLogs(job.request, out, job.progress);
+            status = Status.COMPLETED;
+        } catch (IOException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || job.status == Status.CANCELLED) {
+                status = Status.CANCELLED;
+            } else {
+                logger.error("Log extraction job {} failed", job.id, e);
+                status = Status.FAILED;
+                error = e.getMessage();
+            }
+        }
+
+        synchronized (job) {
+            if (job.status == Status.RUNNING) {
+                job.status = status;
+                job.error = error;
+                job.finishedAt = System.currentTimeMillis();
+            }
+        }
+        logger.info("Log extraction job {} finished: {}", job.id, job.status);
+    }
+
+    /**
+     * Length of the longest prefix that does not end inside a UTF-8 character
+     * @param more Whether the data continues after the buffer
+     */
+    private static int utf8Boundary(byte[] bytes, int length, boolean more) {
+        if (!more) {
+            return length;
+        }
+        int end = length;
+        // Back up over continuation bytes to the start of the last character
+        while (end > 0 && length - end < 4 && (bytes[end - 1] & 0xc0) == 0x80) {
+            end--;
+        }
+        if (end > 0) {
+            int lead = bytes[end - 1] & 0xff;
+            int charLength = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 1;
+            if (length - (end - 1) < charLength) {
+                return end - 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * One extraction job; status fields are guarded by the job's monitor
+     */
+    private static class Job {
+        private final String id;
+        private final LogExtractRequest request;
+        private final String owner;
+        private final Path result;
+        private final ExtractionProgress progress = new ExtractionProgress();
+        private final long createdAt = System.currentTimeMillis();
+        private volatile Future<?> future;
+        private volatile Status status = Status.QUEUED;
+        private volatile String error;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+
+        Job(String id, LogExtractRequest request, String owner, Path result) {
+            this.id = id;
+            this.request = request;
+            this.owner = owner;
+            this.result = result;
+        }
+
+        boolean isAccessibleBy(String user, boolean admin) {
+            return admin || owner.equals(user);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("jobId", id);
+            map.put("status", status);
+            map.put("owner", owner);
+            map.put("fpid", request.getFpids() != null && !request.getFpids().isEmpty()
+                ? request.getFpids() : request.getFpid());
+            map.put("server", request.getServer());
+            map.put("services", request.getServices());
+            map.put("createdAt", createdAt);
+            map.put("startedAt", startedAt > 0 ? startedAt : null);
+            map.put("finishedAt", finishedAt > 0 ? finishedAt : null);
+            map.put("progress", progress.toMap());
+            if (error != null) {
+                map.put("error", error);
+            }
+            return map;
+        }
+
+        void deleteResult() {
+            try {
+                Files.deleteIfExists(result);
+            } catch (IOException e) {
+                logger.warn("Could not delete log job result {}: {}", result, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.ev.tradeedge.marketconnect.logscan.LogFileIndex;
+import com.ev.tradeedge.marketconnect.model.LogFileInfo;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Local disk cache of remote log files.
+ * Entries are keyed on server type, remote path, size and modification time, so a file that
+ * changed on the server is simply a different entry. Files are written to the cache while they
+ * are streamed from the server for the first scan, and the least recently used entries are
+ * deleted when the cache grows beyond its size limit. Each cached file can also keep an index
+ * of its entries next to it, which is deleted together with the file.
+ */
+@Component
+public class LogFileCache {
+    private static final Logger logger = LoggerFactory.getLogger(LogFileCache.class);
+
+    private static final String SUFFIX = ".cache";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final SftpService sftpService;
+
+    @Value("${log.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${log.cache.dir:${java.io.tmpdir}/db-tool-log-cache}")
+    private String cacheDir;
+
+    @Value("${log.cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    // Rotated .gz files never change; active .log files change all the time and are not worth caching
+    @Value("${log.cache.include-plain-files:false}")
+    private boolean includePlainFiles;
+
+    private Path directory;
+
+    // Cache file name -> size, in least recently used order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LogFileCache(SftpService sftpService) {
+        this.sftpService = sftpService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            directory = Paths.get(cacheDir);
+            Files.createDirectories(directory);
+            loadEntries();
+            logger.info("Log file cache at {} holds {} files ({} bytes)", directory, entries.size(), totalBytes);
+        } catch (IOException e) {
+            logger.warn("Log file cache disabled, cannot use {}: {}", cacheDir, e.getMessage());
+            enabled = false;
+        }
+    }
+
+    /**
+     * Reads a log file, optionally using and building an index of it
+     */
+    @FunctionalInterface
+    public interface IndexedFileHandler {
+        /**
+         * @param in File content
+         * @param index Index of this version of the file from an earlier scan, or null
+         * @param indexable Whether an index returned by this call would be kept
+         * @return Index built while reading the file, or null
+         */
+        LogFileIndex handle(InputStream in, LogFileIndex index, boolean indexable) throws IOException;
+    }
+
+    /**
+     * Pass the content of a remote log file to the handler, from the cache if it holds the current
+     * version of the file, otherwise from the server while copying it into the cache.
+     * Cached files also keep the index the handler builds on their first scan.
+     * @param serverType "staging" or "production"
+     * @param file Remote file; size and modification time are looked up on the server if unknown
+     * @param handler Reads the file content
+     * @return false if the file could not be opened
+     * @throws IOException If the handler fails
+     */
+    public boolean read(String serverType, LogFileInfo file, IndexedFileHandler handler) throws IOException {
+        String remotePath = file.getPath();
+        if (!isCacheable(remotePath)) {
+            return sftpService.streamFile(serverType, remotePath, in -> handler.handle(in, null, false));
+        }
+
+        // Discovery already reported size and mtime; otherwise ask the server
+        LogFileInfo current = file;
+        if (current.getSize() < 0 || current.getModifiedTime() <= 0) {
+            current = sftpService.statFile(serverType, remotePath);
+            if (current == null) {
+                return false;
+            }
+        }
+
+        String name = cacheFileName(serverType, remotePath, current.getSize(), current.getModifiedTime());
+        Path cached = directory.resolve(name);
+        if (touch(name, cached)) {
+            hits.incrementAndGet();
+            logger.info("Reading {} from log file cache", remotePath);
+            LogFileIndex index = loadIndex(name);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(cached), 65536)) {
+                LogFileIndex built = handler.handle(in, index, index == null);
+                if (index == null) {
+                    saveIndex(name, built);
+                }
+                return true;
+            } catch (NoSuchFileException e) {
+                // Evicted between lookup and open - fall through to the server
+                remove(name);
+            }
+        }
+
+        misses.incrementAndGet();
+        Path temp = Files.createTempFile(directory, "download-", ".tmp");
+        try {
+            LogFileIndex[] built = new LogFileIndex[1];
+            boolean opened = sftpService.streamFile(serverType, remotePath, in -> {
+                try (OutputStream copy = new BufferedOutputStream(Files.newOutputStream(temp), 65536)) {
+                    InputStream tee = new TeeInputStream(in, copy);
+                    built[0] = handler.handle(tee, null, true);
+
+                    // The reader may stop before the end, e.g. after the gzip trailer
+                    tee.transferTo(OutputStream.nullOutputStream());
+                }
+            });
+            if (opened && Files.size(temp) == current.getSize()) {
+                Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                add(name, current.getSize());
+                saveIndex(name, built[0]);
+            }
+            return opened;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Check whether {@link #read} keeps a copy of this file
+     */
+    public boolean isCacheable(String remotePath) {
+        return enabled && (includePlainFiles || remotePath.endsWith(".gz"));
+    }
+
+    /**
+     * Check whether the cache holds the current version of a file, without reading it
+     * @param file Remote file with the size and modification time from discovery
+     */
+    public boolean contains(String serverType, LogFileInfo file) {
+        if (!isCacheable(file.getPath()) || file.getSize() < 0 || file.getModifiedTime() <= 0) {
+            return false;
+        }
+        String name = cacheFileName(serverType, file.getPath(), file.getSize(), file.getModifiedTime());
+        synchronized (entries) {
+            return entries.containsKey(name);
+        }
+    }
+
+    /**
+     * Get cache size and hit counts
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("directory", cacheDir);
+        synchronized (entries) {
+            stats.put("files", entries.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private LogFileIndex loadIndex(String name) {
+        Path path = indexPath(name);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return LogFileIndex.read(path);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable log file index {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveIndex(String name, LogFileIndex index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            Path temp = Files.createTempFile(directory, "index-", ".tmp");
+            try {
+                index.write(temp);
+                Files.move(temp, indexPath(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not save log file index for {}: {}", name, e.getMessage());
+        }
+    }
+
+    private Path indexPath(String name) {
+        return directory.resolve(name.substring(0, name.length() - SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private boolean touch(String name, Path cached) {
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                return false;
+            }
+        }
+        try {
+            // Keep the LRU order across restarts
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            remove(name);
+            return false;
+        }
+    }
+
+    private void add(String name, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Long previous = entries.put(name, size);
+            totalBytes += size - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+            }
+        }
+        for (String file : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(file));
+                Files.deleteIfExists(indexPath(file));
+            } catch (IOException e) {
+                logger.warn("Could not delete cached log file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (entries) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    private void loadEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<Path> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                if (fileName.endsWith(SUFFIX)) {
+                    files.add(path);
+                } else if (fileName.endsWith(INDEX_SUFFIX)) {
+                    indexes.add(path);
+                } else if (fileName.endsWith(".tmp")) {
+                    // Left over from an interrupted download
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        for (Path index : indexes) {
+            String fileName = index.getFileName().toString();
+            Path cached = directory.resolve(fileName.substring(0, fileName.length() - INDEX_SUFFIX.length()) + SUFFIX);
+            if (!Files.exists(cached)) {
+                Files.deleteIfExists(index);
+            }
+        }
+        files.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+
+        synchronized (entries) {
+            for (Path path : files) {
+                long size = Files.size(path);
+                entries.put(path.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        }
+        if (!files.isEmpty()) {
+            // Apply the size limit in case it was lowered
+            String newest = files.get(files.size() - 1).getFileName().toString();
+            add(newest, entries.get(newest));
+        }
+    }
+
+    private static String cacheFileName(String serverType, String remotePath, long size, long modifiedTime) {
+        // mtime at second precision, as SFTP stat reports it
+        String key = serverType + "\n" + remotePath + "\n" + size + "\n" + (modifiedTime / 1000);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Input stream that copies everything read through it to an output stream
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read instead of skipping so the copy stays complete
+            if (n <= 0) {
+                return 0;
+            }
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            return Math.max(read(buffer, 0, buffer.length), 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream is closed by its owner
+        }
+    }
+}
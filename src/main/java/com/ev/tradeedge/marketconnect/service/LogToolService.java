@@ -1,8 +1,10 @@
 package com.ev.tradeedge.marketconnect.service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -10,35 +12,115 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 
+import com.ev.tradeedge.marketconnect.config.VirtualThreads;
+import com.ev.tradeedge.marketconnect.logscan.LogEntryMatcher;
+import com.ev.tradeedge.marketconnect.logscan.LogFileIndex;
+import com.ev.tradeedge.marketconnect.logscan.LogFileScanner;
+import com.ev.tradeedge.marketconnect.logscan.SpoolingWriter;
+import com.ev.tradeedge.marketconnect.logscan.TimeWindow;
 import com.ev.tradeedge.marketconnect.model.LogExtractRequest;
+import com.ev.tradeedge.marketconnect.model.LogFileInfo;
 import com.ev.tradeedge.marketconnect.model.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @org.springframework.stereotype.Service
 public class LogToolService {
     private static final Logger logger = LoggerFactory.getLogger(LogToolService.class);
     
     private final DatabaseService databaseService;
     private final SftpService sftpService;
+    private final LogFileScanner logFileScanner;
+    private final LogFileCache logFileCache;
+    private final VirtualThreads virtualThreads;
+    
+    @Value("${log-tool.extract.threads:8}")
+    private int extractThreads;
+    
+    @Value("${log-tool.extract.queue-size:10000}")
+    private int extractQueueSize;
+    
+    @Value("${log-tool.extract.max-files-per-host:4}")
+    private int maxFilesPerHost;
+    
+    @Value("${log-tool.extract.spool-threshold-bytes:262144}")
+    private int spoolThresholdBytes;
+    
+    @Value("${log.scan.related-threads.max-keys:10000}")
+    private int relatedThreadsMaxKeys;
+    
+    @Value("${log.scan.related-threads.window-entries:0}")
+    private long relatedThreadsWindowEntries;
+    
+    @Value("${log-tool.extract.result-cache.ttl-ms:60000}")
+    private long resultCacheTtlMs;
+    
+    @Value("${log-tool.extract.result-cache.max-chars:33554432}")
+    private long resultCacheMaxChars;
     
-    public LogToolService(DatabaseService databaseService, SftpService sftpService) {
+    @Value("${log.scan.time-window.enabled:true}")
+    private boolean timeWindowEnabled;
+    
+    @Value("${log.scan.time-window.slack-ms:60000}")
+    private long timeWindowSlackMs;
+    
+    // Scans files of all extraction requests; per-host permits keep each SFTP server within its session pool
+    private ThreadPoolExecutor extractExecutor;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    
+    // Single-flight: extractions currently running, by request key, and recent results
+    private final Map<String, CompletableFuture<String>> inFlightExtractions = new ConcurrentHashMap<>();
+    private ResultCache resultCache;
+    
+    public LogToolService(DatabaseService databaseService, SftpService sftpService, LogFileScanner logFileScanner,
+                          LogFileCache logFileCache, VirtualThreads virtualThreads) {
         this.databaseService = databaseService;
         this.sftpService = sftpService;
+        this.logFileScanner = logFileScanner;
+        this.logFileCache = logFileCache;
+        this.virtualThreads = virtualThreads;
+    }
+    
+    @PostConstruct
+    public void init() {
+        // Scan workers spend their time in JSch reads, which block inside monitors, so they stay on
+        // platform threads even when virtual threads are enabled
+        extractExecutor = new ThreadPoolExecutor(extractThreads, extractThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(extractQueueSize), virtualThreads.platformThreadFactory());
+        extractExecutor.allowCoreThreadTimeOut(true);
+        resultCache = new ResultCache(resultCacheTtlMs, resultCacheMaxChars);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        extractExecutor.shutdownNow();
     }
 
     public List<Service> getServices(String fpid, String server) {
-        try {
-            // Get services from database
-            Connection conn = databaseService.getMainDbConnection(server);
+        // Get services from database
+        try (Connection conn = databaseService.getMainDbConnection(server)) {
             PreparedStatement stmt = conn.prepareStatement(
                 "SELECT DISTINCT ON (service_name) file_process_id, subs_file_id, service_name, " +
                 "service_instance_name, tenant_id, status FROM teopr.audit_event_log " +
@@ -78,9 +160,8 @@ public class LogToolService {
     }
 
     public Map<String, String> getTimeRange(String fpid, String server) {
-        try {
-            // Get time range from database
-            Connection conn = databaseService.getMainDbConnection(server);
+        // Get time range from database
+        try (Connection conn = databaseService.getMainDbConnection(server)) {
             PreparedStatement stmt = conn.prepareStatement(
                 "SELECT start_time, end_time FROM teopr.file_process_summary WHERE file_process_id = ?"
             );
@@ -121,158 +202,456 @@ public class LogToolService {
         }
     }
 
-    // Update the extractLogs method to better handle log pattern matching
+    /**
+     * Extract logs into a string.
+     * Identical requests share one extraction: a request that arrives while the same extraction
+     * is running waits for its result, and a complete result is kept for a short time so that
+     * everyone looking at the same incident gets it without another scan. Results missing a file
+     * that could not be downloaded or read are not kept, so that a passing SFTP error is retried.
+     * @param request Extraction request
+     * @return Extracted logs, or an error message
+     */
     public String extractLogs(LogExtractRequest request) {
-        StringBuilder logs = new StringBuilder();
+        String key;
+        try {
+            key = requestKey(request);
+        } catch (RuntimeException e) {
+            logger.error("Error extracting logs", e);
+            return "Error extracting logs: " + e.getMessage();
+        }
+        
+        String cached = resultCache.get(key);
+        if (cached != null) {
+            logger.info("Returning cached log extraction for FPID(s) {}", Arrays.toString(parseFpids(request)));
+            return cached;
+        }
+        
+        CompletableFuture<String> extraction = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlightExtractions.putIfAbsent(key, extraction);
+        if (running != null) {
+            logger.info("Joining running log extraction for FPID(s) {}", Arrays.toString(parseFpids(request)));
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Error extracting logs: interrupted";
+            } catch (ExecutionException e) {
+                return "Error extracting logs: " + e.getCause().getMessage();
+            }
+        }
         
         try {
-            // Get time range
-            Map<String, String> timeRange = request.getTimeRange();
-            String startTime = timeRange.get("startTime");
-            String endTime = timeRange.get("endTime");
-            
-            // For each service, find and extract logs
-            for (String serviceName : request.getServices()) {
-                logs.append("--").append(serviceName).append("--\n\n");
-                
-                // Find log files
-                List<String> files = sftpService.findLogFiles(
-                    request.getServer(), 
-                    serviceName, 
-                    startTime, 
-                    endTime
-                );
-                
-                if (files.isEmpty()) {
-                    logs.append("No log files found for this service.\n\n");
-                    continue;
-                }
-                
-                // Process each file
-                for (String filePath : files) {
-                    logs.append("File: ").append(filePath).append("\n");
-                    
-                    // Download file
-                    byte[] fileContent = sftpService.downloadFile(request.getServer(), filePath);
-                    
-                    if (fileContent.length == 0) {
-                        logs.append("Failed to download file: ").append(filePath).append("\n");
-                        continue;
-                    }
-                    
-                    // Extract content
-                    String content;
-                    if (filePath.endsWith(".gz")) {
-                        content = extractGzipContent(fileContent);
-                    } else {
-                        content = new String(fileContent, "UTF-8");
-                    }
-                    
-                    // Find relevant log entries
-                    String fpid = request.getFpid();
-                    extractLogEntries(content, fpid, logs);
-                    
-                    logs.append("\n");
+            StringWriter logs = new StringWriter();
+            String result;
+            try {
+                int failedFiles = extractLogs(request, logs);
+                result = logs.toString();
+                if (failedFiles == 0) {
+                    resultCache.put(key, result);
                 }
-                
-                logs.append("\n");
+            } catch (Exception e) {
+                logger.error("Error extracting logs", e);
+                result = "Error extracting logs: " + e.getMessage();
             }
-            
-            return logs.toString();
-        } catch (Exception e) {
-            logger.error("Error extracting logs", e);
-            return "Error extracting logs: " + e.getMessage();
+            extraction.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            extraction.completeExceptionally(e);
+            throw e;
+        } finally {
+            // The result is cached before the extraction is removed, so no request misses both
+            inFlightExtractions.remove(key, extraction);
         }
     }
 
     /**
-     * Extract log entries from content based on FileProcessId
-     * @param content Log file content
-     * @param fpid File Process ID to search for
-     * @param logs StringBuilder to append extracted logs
+     * Extract logs and write them to the given writer as the files are scanned.
+     * Files are scanned in parallel on the extraction pool, at most a few at a time per SFTP
+     * server, and the results are written in service and file order in the same format as
+     * {@link #extractLogs(LogExtractRequest)}. The writer is flushed after every file so that
+     * callers can stream it to the client.
+     * <p>
+     * When several FPIDs are requested each file is still scanned once; the output then has one
+     * section per FPID, headed "==FileProcessId:&lt;fpid&gt;==", each in the single-FPID format.
+     * @param request Extraction request
+     * @param out Destination for the extracted log text
+     * @return Number of files that could not be downloaded or read; their entries are missing
+     * @throws IOException If writing to the destination fails, e.g. the client went away
      */
-    private void extractLogEntries(String content, String fpid, StringBuilder logs) {
-        // Split content by log entry delimiter
-        String[] entries = content.split("\\*\\*\\*\\*\\*\\*\\*\\*\\*\\*");
+    public int extractLogs(LogExtractRequest request, Writer out) throws IOException {
+        return extractLogs(request, out, new ExtractionProgress());
+    }
+
+    /**
+     * Extract logs as {@link #extractLogs(LogExtractRequest, Writer)} does, counting files, bytes
+     * and matched entries as the scans progress
+     * @param request Extraction request
+     * @param out Destination for the extracted log text
+     * @param progress Updated while the extraction runs
+     * @return Number of files that could not be downloaded or read; their entries are missing
+     * @throws IOException If writing to the destination fails or the extraction is interrupted
+     */
+    public int extractLogs(LogExtractRequest request, Writer out, ExtractionProgress progress) throws IOException {
+        long[] fpids = parseFpids(request);
+        
+        // Get time range
+        Map<String, String> timeRange = request.getTimeRange();
+        String startTime = timeRange.get("startTime");
+        String endTime = timeRange.get("endTime");
+        
+        // Find log files for all services in one discovery
+        Map<String, List<LogFileInfo>> filesByService = sftpService.findLogFiles(
+            request.getServer(), 
+            request.getServices(), 
+            startTime, 
+            endTime
+        );
         
-        // Keep track of threads and tenant IDs for context
-        Map<String, List<String>> threadContexts = new HashMap<>();
+        // Only entries stamped within the time range (plus some slack) need to be read
+        TimeWindow window = timeWindowEnabled ? TimeWindow.parse(startTime, endTime, timeWindowSlackMs) : null;
         
-        for (int i = 0; i < entries.length; i++) {
-            String entry = entries[i].trim();
-            if (entry.isEmpty()) continue;
+        // Start scanning every file; the results are written out in order below
+        Extraction extraction = new Extraction(progress);
+        Map<String, List<Future<FileScan>>> scansByService = new LinkedHashMap<>();
+        for (String serviceName : request.getServices()) {
+            List<Future<FileScan>> scans = new ArrayList<>();
+            List<LogFileInfo> files = filesByService.getOrDefault(serviceName, List.of());
+            progress.addFilesDiscovered(files.size());
+            for (LogFileInfo file : files) {
+                scans.add(submitScan(request, fpids, window, file, extraction));
+            }
+            scansByService.put(serviceName, scans);
+        }
+        
+        try {
+            int failedFiles = 0;
+            for (int section = 0; section < fpids.length; section++) {
+                if (fpids.length > 1) {
+                    out.write("==FileProcessId:" + fpids[section] + "==\n\n");
+                }
+                // Every section reports the same files
+                int failed = writeSection(request, section, filesByService, scansByService, out);
+                if (section == 0) {
+                    failedFiles = failed;
+                }
+            }
+            return failedFiles;
+        } finally {
+            // Stop scans nobody will read, e.g. after the client disconnected
+            for (List<Future<FileScan>> scans : scansByService.values()) {
+                for (Future<FileScan> scan : scans) {
+                    scan.cancel(true);
+                }
+            }
+            extraction.close();
+        }
+    }
+
+    /**
+     * Write the entries of one FPID for all services and files, waiting for each file's scan in turn
+     * @return Number of files reported as failed
+     */
+    private int writeSection(LogExtractRequest request, int section, Map<String, List<LogFileInfo>> filesByService,
+                              Map<String, List<Future<FileScan>>> scansByService, Writer out) throws IOException {
+        int failed = 0;
+        for (String serviceName : request.getServices()) {
+            out.write("--" + serviceName + "--\n\n");
+            
+            List<LogFileInfo> files = filesByService.getOrDefault(serviceName, List.of());
+            List<Future<FileScan>> scans = scansByService.get(serviceName);
             
-            // Add delimiter back for complete log entry
-            String completeEntry = "**********\n" + entry + "\n";
+            if (files.isEmpty()) {
+                out.write("No log files found for this service.\n\n");
+                out.flush();
+                continue;
+            }
             
-            // Check if entry contains the FPID directly
-            if (entry.contains("FileProcessId:" + fpid)) {
-                logs.append(completeEntry);
+            // Process each file
+            for (int i = 0; i < files.size(); i++) {
+                String filePath = files.get(i).getPath();
+                out.write("File: " + filePath + "\n");
                 
-                // Extract thread for context tracking
-                String thread = extractThread(entry);
-                String tenantId = extractTenantId(entry);
+                FileScan scan = await(scans.get(i));
+                if (scan.spools != null) {
+                    scan.spools[section].transferTo(out);
+                    scan.spools[section].close();
+                }
                 
-                if (thread != null && tenantId != null) {
-                    String key = thread + ":" + tenantId;
-                    threadContexts.putIfAbsent(key, new ArrayList<>());
-                    threadContexts.get(key).add(completeEntry);
+                if (!scan.opened) {
+                    out.write("Failed to download file: " + filePath + "\n");
+                    failed++;
+                } else if (scan.error != null) {
+                    out.write("\nFailed to read file: " + filePath + " (" + scan.error + ")\n");
+                    failed++;
+                } else {
+                    out.write("\n");
                 }
+                out.flush();
             }
-            // Check for FileProcessId:0 and match with previous context
-            else if (entry.contains("FileProcessId:0") || !entry.contains("FileProcessId:")) {
-                String thread = extractThread(entry);
-                String tenantId = extractTenantId(entry);
-                
-                if (thread != null && tenantId != null) {
-                    String key = thread + ":" + tenantId;
+            
+            out.write("\n");
+            out.flush();
+        }
+        return failed;
+    }
+
+    private Future<FileScan> submitScan(LogExtractRequest request, long[] fpids, TimeWindow window, LogFileInfo file,
+                                        Extraction extraction) {
+        Semaphore hostPermits = hostPermits(request.getServer());
+        try {
+            return extractExecutor.submit(() -> scanFile(request, fpids, window, file, hostPermits, extraction));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Log extraction queue is full. Skipping {}", file.getPath());
+            return CompletableFuture.completedFuture(new FileScan(null, true, "too many files queued for scanning"));
+        }
+    }
+
+    /**
+     * Scan one file into one spool per FPID, holding one of the SFTP server's scan slots meanwhile
+     */
+    private FileScan scanFile(LogExtractRequest request, long[] fpids, TimeWindow window, LogFileInfo file,
+                              Semaphore hostPermits, Extraction extraction) {
+        String filePath = file.getPath();
+        ExtractionProgress progress = extraction.progress;
+        SpoolingWriter[] spools = new SpoolingWriter[fpids.length];
+        try {
+            for (int i = 0; i < spools.length; i++) {
+                spools[i] = extraction.newSpool();
+            }
+            hostPermits.acquire();
+        } catch (IOException e) {
+            return new FileScan(null, true, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FileScan(null, true, "interrupted");
+        }
+        
+        try {
+            // Scan the file while it is transferred (or read from the local cache)
+            LogEntryMatcher matcher = new LogEntryMatcher(fpids, request.isIncludeRelatedThreads(),
+                relatedThreadsMaxKeys, relatedThreadsWindowEntries);
+            boolean gzip = filePath.endsWith(".gz");
+            // A context window counts every entry of the time window, so it needs all of them:
+            // neither the prefilter nor an index may leave entries out
+            boolean windowed = request.isIncludeRelatedThreads() && relatedThreadsWindowEntries > 0;
+            boolean opened;
+            if (!windowed && !logFileCache.contains(request.getServer(), file) && sftpService.prefilterFile(request.getServer(),
+                    filePath, fpids, request.isIncludeRelatedThreads(),
+                    in -> {
+                        progress.fileOpened();
+                        progress.addEntriesMatched(
+                            logFileScanner.scan(progress.count(in), false, matcher, spools, null, window));
+                    })) {
+                // Only candidate entries came over the network; the matcher still decides what is written
+                opened = true;
+            } else if (window != null && !gzip && !logFileCache.isCacheable(filePath)) {
+                // Uncompressed and not cached: jump to the start of the time window on the server
+                opened = sftpService.accessFile(request.getServer(), filePath, (remote, size) -> {
+                    progress.fileOpened();
+                    progress.addEntriesMatched(logFileScanner.scan(offset -> progress.count(remote.open(offset)),
+                        size, window, matcher, spools));
+                });
+            } else {
+                opened = logFileCache.read(request.getServer(), file, (content, index, indexable) -> {
+                    progress.fileOpened();
+                    InputStream in = progress.count(content);
                     
-                    // If we have previous context for this thread+tenant, this might be related
-                    if (threadContexts.containsKey(key) && !threadContexts.get(key).isEmpty()) {
-                        logs.append(completeEntry);
-                        threadContexts.get(key).add(completeEntry);
+                    // An index from an earlier scan lets us skip the file or read only its candidate blocks
+                    if (index != null && !windowed) {
+                        if (index.mightContainAny(fpids)) {
+                            progress.addEntriesMatched(
+                                logFileScanner.scan(in, gzip, index, fpids, matcher, spools, window));
+                        }
+                        return null;
                     }
-                }
+                    
+                    // An index must cover the whole file, so only stop at the end of the time window without one.
+                    // Either way only entries of the window are written.
+                    if (!indexable) {
+                        progress.addEntriesMatched(logFileScanner.scan(in, gzip, matcher, spools, null, window));
+                        return null;
+                    }
+                    LogFileIndex.Builder builder = new LogFileIndex.Builder();
+                    progress.addEntriesMatched(logFileScanner.scan(in, gzip, matcher, spools, builder, window));
+                    return builder.build();
+                });
             }
+            if (opened) {
+                progress.fileScanned();
+            } else {
+                progress.fileFailed();
+            }
+            return new FileScan(spools, opened, null);
+        } catch (IOException e) {
+            logger.error("Error reading {}", filePath, e);
+            progress.fileFailed();
+            return new FileScan(spools, true, e.getMessage());
+        } finally {
+            hostPermits.release();
         }
     }
 
     /**
-     * Extract thread information from log entry
-     * @param entry Log entry
-     * @return Thread name or null if not found
+     * Key of everything that affects the extracted text; order matters as it is the output order
      */
-    private String extractThread(String entry) {
-        Pattern pattern = Pattern.compile("Thread:\\s*\\[([^\\]]+)\\]");
-        Matcher matcher = pattern.matcher(entry);
-        return matcher.find() ? matcher.group(1) : null;
+    private String requestKey(LogExtractRequest request) {
+        Map<String, String> timeRange = request.getTimeRange();
+        StringBuilder key = new StringBuilder()
+            .append(request.getServer()).append('\n')
+            .append(Arrays.toString(parseFpids(request))).append('\n')
+            .append(request.getServices()).append('\n')
+            .append(timeRange.get("startTime") != null ? timeRange.get("startTime").trim() : null).append('\n')
+            .append(timeRange.get("endTime") != null ? timeRange.get("endTime").trim() : null).append('\n')
+            .append(request.isIncludeRelatedThreads());
+        return key.toString();
     }
 
     /**
-     * Extract tenant ID from log entry
-     * @param entry Log entry
-     * @return Tenant ID or null if not found
+     * Get the requested FPIDs in request order without duplicates, from fpids or else fpid
      */
-    private String extractTenantId(String entry) {
-        Pattern pattern = Pattern.compile("TenantId:(\\d+|\\-\\d+)");
-        Matcher matcher = pattern.matcher(entry);
-        return matcher.find() ? matcher.group(1) : null;
+    private long[] parseFpids(LogExtractRequest request) {
+        List<String> values = request.getFpids() != null && !request.getFpids().isEmpty()
+            ? request.getFpids()
+            : Collections.singletonList(request.getFpid());
+        return values.stream().mapToLong(this::parseFpid).distinct().toArray();
     }
-    
-    private String extractGzipContent(byte[] compressedContent) throws IOException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(compressedContent);
-        GZIPInputStream gis = new GZIPInputStream(bis);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    private long parseFpid(String fpid) {
+        try {
+            return Long.parseLong(fpid.trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid FPID: " + fpid);
+        }
+    }
+
+    private FileScan await(Future<FileScan> scan) throws IOException {
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for log scan");
+        } catch (ExecutionException e) {
+            logger.error("Log scan failed", e.getCause());
+            return new FileScan(null, true, String.valueOf(e.getCause().getMessage()));
+        }
+    }
+
+    private Semaphore hostPermits(String serverType) {
+        return hostPermits.computeIfAbsent(serverType, k -> new Semaphore(maxFilesPerHost, true));
+    }
+
+    /**
+     * Result of scanning one file: matched entries per FPID, or why the file could not be read
+     */
+    private static class FileScan {
+        private final SpoolingWriter[] spools;
+        private final boolean opened;
+        private final String error;
+
+        FileScan(SpoolingWriter[] spools, boolean opened, String error) {
+            this.spools = spools;
+            this.opened = opened;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Recent extraction results by request key, dropped after the TTL or, oldest first,
+     * when their total length exceeds the limit
+     */
+    private static class ResultCache {
+        private final long ttlMs;
+        private final long maxChars;
+        private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<>();
+        private long totalChars;
+        
+        ResultCache(long ttlMs, long maxChars) {
+            this.ttlMs = ttlMs;
+            this.maxChars = maxChars;
+        }
         
-        byte[] buffer = new byte[1024];
-        int len;
-        while ((len = gis.read(buffer)) != -1) {
-            bos.write(buffer, 0, len);
+        synchronized String get(String key) {
+            CachedResult cached = results.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.createdAt > ttlMs) {
+                remove(key);
+                return null;
+            }
+            return cached.logs;
         }
         
-        gis.close();
-        bis.close();
+        synchronized void put(String key, String logs) {
+            if (ttlMs <= 0 || logs.length() > maxChars) {
+                return;
+            }
+            remove(key);
+            results.put(key, new CachedResult(logs, System.currentTimeMillis()));
+            totalChars += logs.length();
+            
+            // Oldest first; expired entries go as well
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, CachedResult>> it = results.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CachedResult> eldest = it.next();
+                if (totalChars <= maxChars && now - eldest.getValue().createdAt <= ttlMs) {
+                    break;
+                }
+                it.remove();
+                totalChars -= eldest.getValue().logs.length();
+            }
+        }
         
-        return bos.toString("UTF-8");
+        private void remove(String key) {
+            CachedResult removed = results.remove(key);
+            if (removed != null) {
+                totalChars -= removed.logs.length();
+            }
+        }
+    }
+    
+    private static class CachedResult {
+        private final String logs;
+        private final long createdAt;
+        
+        CachedResult(String logs, long createdAt) {
+            this.logs = logs;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Spools of one extraction request, so that all of them are deleted when the request ends
+     */
+    private class Extraction {
+        private final ExtractionProgress progress;
+        private final List<SpoolingWriter> spools = new ArrayList<>();
+        private boolean closed;
+        
+        Extraction(ExtractionProgress progress) {
+            this.progress = progress;
+        }
+
+        synchronized SpoolingWriter newSpool() throws IOException {
+            if (closed) {
+                throw new IOException("Extraction ended");
+            }
+            SpoolingWriter spool = new SpoolingWriter(spoolThresholdBytes);
+            spools.add(spool);
+            return spool;
+        }
+
+        synchronized void close() {
+            closed = true;
+            for (SpoolingWriter spool : spools) {
+                try {
+                    spool.close();
+                } catch (IOException e) {
+                    logger.warn("Could not delete log spool: {}", e.getMessage());
+                }
+            }
+            spools.clear();
+        }
     }
 }
@@ -7,46 +7,82 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.ev.tradeedge.marketconnect.config.VirtualThreads;
 import com.ev.tradeedge.marketconnect.model.Database;
+import com.ev.tradeedge.marketconnect.model.DatabaseActivity;
 import com.ev.tradeedge.marketconnect.model.FileProcessEvent;
 import com.ev.tradeedge.marketconnect.model.KillQueryRequest;
 import com.ev.tradeedge.marketconnect.model.Query;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @Service
 public class QueryToolService {
     private static final Logger logger = LoggerFactory.getLogger(QueryToolService.class);
     
     private final DatabaseService databaseService;
+    private final ConfigService configService;
+    private final TenantDatasourceCatalog tenantCatalog;
+    private final VirtualThreads virtualThreads;
+
+    @Value("${query-tool.fanout.threads:16}")
+    private int fanoutThreads;
+
+    @Value("${query-tool.fanout.queue-size:1000}")
+    private int fanoutQueueSize;
+
+    @Value("${query-tool.fanout.target-timeout-ms:15000}")
+    private long targetTimeoutMs;
+
+    // Bounded pool for server-wide activity fan-out
+    private ThreadPoolExecutor fanoutExecutor;
     
 
-    public QueryToolService(DatabaseService databaseService) {
+    public QueryToolService(DatabaseService databaseService, ConfigService configService,
+                            TenantDatasourceCatalog tenantCatalog, VirtualThreads virtualThreads) {
         this.databaseService = databaseService;
+        this.configService = configService;
+        this.tenantCatalog = tenantCatalog;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @PostConstruct
+    public void init() {
+        fanoutExecutor = new ThreadPoolExecutor(fanoutThreads, fanoutThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(fanoutQueueSize), virtualThreads.threadFactory("query-fanout"));
+        fanoutExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanoutExecutor.shutdownNow();
     }
 
     public List<String> getServers(String type) {
         try {
-            // Get servers from database
-            Connection conn = databaseService.getMainDbConnection(type);
-            PreparedStatement stmt = conn.prepareStatement(
-                "SELECT DISTINCT database_server_name FROM tecfg.tenant_datasource"
-            );
-            ResultSet rs = stmt.executeQuery();
-            
-            List<String> servers = new ArrayList<>();
-            while (rs.next()) {
-                servers.add(rs.getString("database_server_name"));
-            }
-            
-            rs.close();
-            stmt.close();
-            
-            return servers;
+            return tenantCatalog.getServerNames(type);
         } catch (SQLException e) {
             logger.error("Error getting servers", e);
             // Fallback to mock data
@@ -59,14 +95,10 @@ public class QueryToolService {
     }
 
     public List<Database> getDatabasesByFpid(String id, String server) {
-        try {
-            // Get databases from database
-            Connection conn = databaseService.getMainDbConnection(server);
+        // Resolve the tenant of the file process, then look its datasources up in the catalog
+        try (Connection conn = databaseService.getMainDbConnection(server)) {
             PreparedStatement stmt = conn.prepareStatement(
-                "SELECT b1.tenant_datasource_id, a1.file_process_id, b1.tenant_id, b1.database_server_name, " +
-                "b1.database_port_number, b1.database_name, b1.database_user_name " +
-                "FROM teopr.file_process_summary a1, tecfg.tenant_datasource b1 " +
-                "WHERE a1.tenant_id = b1.tenant_id AND a1.file_process_id = ?"
+                "SELECT tenant_id FROM teopr.file_process_summary WHERE file_process_id = ?"
             );
             
             // Convert string to long before setting parameter
@@ -76,15 +108,7 @@ public class QueryToolService {
             
             List<Database> databases = new ArrayList<>();
             while (rs.next()) {
-                Database db = new Database(
-                    rs.getString("tenant_datasource_id"), // Use tenant_datasource_id as the ID
-                    rs.getString("tenant_id"),
-                    rs.getString("database_server_name"),
-                    rs.getString("database_port_number"),
-                    rs.getString("database_name"),
-                    rs.getString("database_user_name")
-                );
-                databases.add(db);
+                databases.addAll(tenantCatalog.findByTenant(server, rs.getString("tenant_id")));
             }
             
             rs.close();
@@ -107,33 +131,7 @@ public class QueryToolService {
 
     public List<Database> getDatabasesByServer(String name, String type) {
         try {
-            // Get databases from database
-            Connection conn = databaseService.getMainDbConnection(type);
-            PreparedStatement stmt = conn.prepareStatement(
-                "SELECT tenant_datasource_id, tenant_id, database_server_name, " +
-                "database_port_number, database_name, database_user_name " +
-                "FROM tecfg.tenant_datasource WHERE database_server_name = ?"
-            );
-            stmt.setString(1, name);
-            ResultSet rs = stmt.executeQuery();
-            
-            List<Database> databases = new ArrayList<>();
-            while (rs.next()) {
-                Database db = new Database(
-                    rs.getString("tenant_datasource_id"),
-                    rs.getString("tenant_id"),
-                    rs.getString("database_server_name"),
-                    rs.getString("database_port_number"),
-                    rs.getString("database_name"),
-                    rs.getString("database_user_name")
-                );
-                databases.add(db);
-            }
-            
-            rs.close();
-            stmt.close();
-            
-            return databases;
+            return tenantCatalog.findByServer(type, name);
         } catch (SQLException e) {
             logger.error("Error getting databases by server", e);
             // Fallback to mock data
@@ -147,57 +145,16 @@ public class QueryToolService {
     public List<Query> getQueries(String databaseId, String serverType) {
         try {
             // First, get the database details
-            Connection metaConn = databaseService.getMainDbConnection(serverType);
-            PreparedStatement metaStmt = metaConn.prepareStatement(
-                "SELECT database_server_name, database_port_number, database_name, database_user_name " +
-                "FROM tecfg.tenant_datasource WHERE tenant_datasource_id = ?"
-            );
-            //metaStmt.setString(1, databaseId);
-            metaStmt.setLong(1, Long.parseLong(databaseId));
-            ResultSet metaRs = metaStmt.executeQuery();
-            
-            if (!metaRs.next()) {
-                throw new SQLException("Database not found: " + databaseId);
-            }
-            
-            String host = metaRs.getString("database_server_name");
-            String port = metaRs.getString("database_port_number");
-            String dbName = metaRs.getString("database_name");
-            String user = metaRs.getString("database_user_name");
+            Database database = tenantCatalog.findById(serverType, String.valueOf(Long.parseLong(databaseId)))
+                .orElseThrow(() -> new SQLException("Database not found: " + databaseId));
             
-            metaRs.close();
-            metaStmt.close();
+            String host = database.getServerName();
+            String port = database.getPort();
+            String dbName = database.getName();
+            String user = database.getUsername();
             
             // Now connect to the tenant database and get queries
-            Connection tenantConn = databaseService.getTenantDbConnection(host, port, dbName, user);
-            PreparedStatement tenantStmt = tenantConn.prepareStatement(
-                "SELECT datname, pid, application_name, usename, query_start, " +
-                "CASE WHEN now() > query_start THEN now() - query_start " +
-                "WHEN now() < query_start THEN query_start - now() END as execution_time, " +
-                "state, query FROM pg_stat_activity WHERE datname = ?"
-            );
-            tenantStmt.setString(1, dbName);
-            ResultSet tenantRs = tenantStmt.executeQuery();
-            
-            List<Query> queries = new ArrayList<>();
-            while (tenantRs.next()) {
-                Query query = new Query(
-                    tenantRs.getString("datname"),
-                    tenantRs.getString("pid"),
-                    tenantRs.getString("application_name"),
-                    tenantRs.getString("usename"),
-                    tenantRs.getString("query_start"),
-                    tenantRs.getString("execution_time"),
-                    tenantRs.getString("state"),
-                    tenantRs.getString("query")
-                );
-                queries.add(query);
-            }
-            
-            tenantRs.close();
-            tenantStmt.close();
-            
-            return queries;
+            return fetchTenantQueries(host, port, dbName, user, 0);
         } catch (SQLException e) {
             logger.error("Error getting queries", e);
             // Fallback to mock data
@@ -236,6 +193,235 @@ public class QueryToolService {
         }
     }
 
+    /**
+     * Query pg_stat_activity on every tenant database of a server in parallel and hand each
+     * database's result to the sink as soon as it arrives. A slow or unreachable tenant is
+     * reported as an error entry once its timeout expires and does not hold back the others.
+     * @param name Database server name (database_server_name in tenant_datasource)
+     * @param type "staging" or "production"
+     * @param sink Receives one DatabaseActivity per tenant database, in completion order
+     */
+    public void streamServerActivity(String name, String type, Consumer<DatabaseActivity> sink) throws SQLException {
+        List<Database> databases = tenantCatalog.findByServer(type, name);
+        logger.info("Fetching activity for {} databases on server {}", databases.size(), name);
+
+        List<List<Database>> targets = new ArrayList<>();
+        for (Database db : databases) {
+            targets.add(List.of(db));
+        }
+
+        fanOut(targets, (group, cancelled) -> {
+            Database db = group.get(0);
+            return List.of(fetchTenantQueries(
+                db.getServerName(), db.getPort(), db.getName(), db.getUsername(), targetTimeoutMs));
+        }, sink);
+    }
+
+    /**
+     * Take one pg_stat_activity snapshot per physical database server and split it by database.
+     * pg_stat_activity is cluster-wide, so tenant databases are grouped by mapped host and port
+     * and each group is read with a single query instead of one connection per database.
+     * Note that the tenant user only sees query text of other roles' sessions if it is allowed
+     * to read all statistics (pg_read_all_stats or superuser).
+     * @param name Database server name (database_server_name in tenant_datasource)
+     * @param type "staging" or "production"
+     * @param sink Receives one DatabaseActivity per tenant database, in completion order
+     */
+    public void streamServerSnapshot(String name, String type, Consumer<DatabaseActivity> sink) throws SQLException {
+        List<Database> databases = tenantCatalog.findByServer(type, name);
+
+        Map<String, List<Database>> byServer = new LinkedHashMap<>();
+        for (Database db : databases) {
+            String key = configService.getServerIp(db.getServerName()) + ":" + db.getPort();
+            byServer.computeIfAbsent(key, k -> new ArrayList<>()).add(db);
+        }
+        logger.info("Fetching activity for {} databases on server {} with {} snapshot queries",
+                    databases.size(), name, byServer.size());
+
+        fanOut(new ArrayList<>(byServer.values()), this::fetchServerQueries, sink);
+    }
+
+    /**
+     * Fetches the queries of each database in a group, in group order
+     */
+    @FunctionalInterface
+    private interface ActivityTask {
+        List<List<Query>> fetch(List<Database> group, BooleanSupplier cancelled) throws SQLException;
+    }
+
+    /**
+     * Run one task per group of databases on the fan-out executor and pass every database's
+     * activity to the sink as soon as its group completes, fails or times out
+     */
+    private void fanOut(List<List<Database>> groups, ActivityTask task, Consumer<DatabaseActivity> sink)
+            throws SQLException {
+        BlockingQueue<DatabaseActivity> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<List<List<Query>>>> futures = new ArrayList<>();
+        int expected = 0;
+
+        for (List<Database> group : groups) {
+            expected += group.size();
+            CompletableFuture<List<List<Query>>> result = new CompletableFuture<>();
+            long submitted = System.currentTimeMillis();
+            result.whenComplete((queries, error) -> {
+                for (int i = 0; i < group.size(); i++) {
+                    completed.add(toActivity(group.get(i), queries != null ? queries.get(i) : null, error, submitted));
+                }
+            });
+            futures.add(result);
+
+            try {
+                fanoutExecutor.execute(() -> {
+                    if (result.isDone()) {
+                        return; // Cancelled before it started
+                    }
+                    // The timeout runs from when the target is actually queried, not from when it was queued
+                    result.orTimeout(targetTimeoutMs, TimeUnit.MILLISECONDS);
+                    try {
+                        result.complete(task.fetch(group, result::isDone));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        try {
+            for (int i = 0; i < expected; i++) {
+                sink.accept(completed.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for server activity", e);
+        } finally {
+            // Stop work for any target that is still queued if the client went away
+            futures.forEach(f -> f.cancel(false));
+        }
+    }
+
+    private DatabaseActivity toActivity(Database db, List<Query> queries, Throwable error, long submitted) {
+        long elapsed = System.currentTimeMillis() - submitted;
+        if (error == null) {
+            return new DatabaseActivity(db, queries, null, elapsed);
+        }
+
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message;
+        if (cause instanceof TimeoutException) {
+            message = "Timed out after " + targetTimeoutMs + " ms";
+        } else if (cause instanceof CancellationException) {
+            message = "Cancelled";
+        } else if (cause instanceof RejectedExecutionException) {
+            message = "Too many databases queued";
+        } else {
+            message = cause.getMessage();
+        }
+        logger.warn("Error getting activity for database {} on {}: {}", db.getName(), db.getServerName(), message);
+        return new DatabaseActivity(db, new ArrayList<>(), message, elapsed);
+    }
+
+    /**
+     * Get the activity of one tenant database from pg_stat_activity
+     * @param timeoutMs Statement timeout in milliseconds, or 0 for none
+     */
+    private List<Query> fetchTenantQueries(String host, String port, String dbName, String user, long timeoutMs)
+            throws SQLException {
+        try (Connection tenantConn = databaseService.getTenantDbConnection(host, port, dbName, user)) {
+            PreparedStatement tenantStmt = tenantConn.prepareStatement(
+                "SELECT datname, pid, application_name, usename, query_start, " +
+                "CASE WHEN now() > query_start THEN now() - query_start " +
+                "WHEN now() < query_start THEN query_start - now() END as execution_time, " +
+                "state, query FROM pg_stat_activity WHERE datname = ?"
+            );
+            if (timeoutMs > 0) {
+                tenantStmt.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMs)));
+            }
+            tenantStmt.setString(1, dbName);
+            ResultSet tenantRs = tenantStmt.executeQuery();
+            
+            List<Query> queries = new ArrayList<>();
+            while (tenantRs.next()) {
+                Query query = new Query(
+                    tenantRs.getString("datname"),
+                    tenantRs.getString("pid"),
+                    tenantRs.getString("application_name"),
+                    tenantRs.getString("usename"),
+                    tenantRs.getString("query_start"),
+                    tenantRs.getString("execution_time"),
+                    tenantRs.getString("state"),
+                    tenantRs.getString("query")
+                );
+                queries.add(query);
+            }
+            
+            tenantRs.close();
+            tenantStmt.close();
+            
+            return queries;
+        }
+    }
+
+    /**
+     * Read pg_stat_activity once for a group of databases on the same physical server.
+     * Any database of the group can be used to connect; the next one is tried if a connection fails.
+     */
+    private List<List<Query>> fetchServerQueries(List<Database> group, BooleanSupplier cancelled)
+            throws SQLException {
+        String[] names = group.stream().map(Database::getName).distinct().toArray(String[]::new);
+        SQLException lastError = null;
+
+        for (Database db : group) {
+            if (cancelled.getAsBoolean()) {
+                break;
+            }
+            try (Connection tenantConn = databaseService.getTenantDbConnection(
+                    db.getServerName(), db.getPort(), db.getName(), db.getUsername())) {
+                PreparedStatement stmt = tenantConn.prepareStatement(
+                    "SELECT datname, pid, application_name, usename, query_start, " +
+                    "CASE WHEN now() > query_start THEN now() - query_start " +
+                    "WHEN now() < query_start THEN query_start - now() END as execution_time, " +
+                    "state, query FROM pg_stat_activity WHERE datname = ANY(?)"
+                );
+                stmt.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(targetTimeoutMs)));
+                stmt.setArray(1, tenantConn.createArrayOf("text", names));
+                ResultSet rs = stmt.executeQuery();
+
+                // Partition the snapshot by database name
+                Map<String, List<Query>> byName = new HashMap<>();
+                while (rs.next()) {
+                    Query query = new Query(
+                        rs.getString("datname"),
+                        rs.getString("pid"),
+                        rs.getString("application_name"),
+                        rs.getString("usename"),
+                        rs.getString("query_start"),
+                        rs.getString("execution_time"),
+                        rs.getString("state"),
+                        rs.getString("query")
+                    );
+                    byName.computeIfAbsent(query.getDatabase(), k -> new ArrayList<>()).add(query);
+                }
+
+                rs.close();
+                stmt.close();
+
+                List<List<Query>> result = new ArrayList<>();
+                for (Database member : group) {
+                    result.add(byName.getOrDefault(member.getName(), new ArrayList<>()));
+                }
+                return result;
+            } catch (SQLException e) {
+                logger.warn("Could not read activity through database {} on {}: {}",
+                            db.getName(), db.getServerName(), e.getMessage());
+                lastError = e;
+            }
+        }
+
+        throw lastError != null ? lastError : new SQLException("Cancelled");
+    }
+
     public void killQueries(KillQueryRequest request) {
         try {
             // First, get the database details
@@ -245,9 +431,6 @@ public class QueryToolService {
             String dbName = database.getName();
             String user = database.getUsername();
             
-            // Connect to the tenant database
-            Connection tenantConn = databaseService.getTenantDbConnection(host, port, dbName, user);
-            
             // Build the query to kill the processes
             StringBuilder queryBuilder = new StringBuilder();
             queryBuilder.append("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE pid IN (");
@@ -261,17 +444,20 @@ public class QueryToolService {
             
             queryBuilder.append(")");
             
-            PreparedStatement stmt = tenantConn.prepareStatement(queryBuilder.toString());
-            
-            // Set the parameters
-            for (int i = 0; i < request.getQueryIds().size(); i++) {
-                stmt.setInt(i + 1, Integer.parseInt(request.getQueryIds().get(i)));
+            // Connect to the tenant database
+            try (Connection tenantConn = databaseService.getTenantDbConnection(host, port, dbName, user)) {
+                PreparedStatement stmt = tenantConn.prepareStatement(queryBuilder.toString());
+                
+                // Set the parameters
+                for (int i = 0; i < request.getQueryIds().size(); i++) {
+                    stmt.setInt(i + 1, Integer.parseInt(request.getQueryIds().get(i)));
+                }
+                
+                // Execute the query
+                stmt.executeQuery();
+                stmt.close();
             }
             
-            // Execute the query
-            stmt.executeQuery();
-            stmt.close();
-            
             logger.info("Killed queries: {}", request.getQueryIds());
         } catch (SQLException e) {
             logger.error("Error killing queries", e);
@@ -282,9 +468,8 @@ public class QueryToolService {
  // Add this new method to your existing service
 
  public List<FileProcessEvent> getFileProcessEvents(Long fileProcessId, String startTime, String endTime) {
-     try {
-         // Get the main database connection
-         Connection conn = databaseService.getMainDbConnection("staging"); // or use a parameter for server type
+     // Get the main database connection
+     try (Connection conn = databaseService.getMainDbConnection("staging")) { // or use a parameter for server type
          
          StringBuilder queryBuilder = new StringBuilder();
          queryBuilder.append("SELECT file_process_event_id, parent_process_event_id, file_process_id, ");
@@ -2,267 +2,551 @@ package com.ev.tradeedge.marketconnect.service;
 
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.ev.tradeedge.marketconnect.model.Config;
+import com.ev.tradeedge.marketconnect.model.LogFileInfo;
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 
 @Service
 public class SftpService {
     private static final Logger logger = LoggerFactory.getLogger(SftpService.class);
     
+    // Buffers tried in turn around the requested window when no files are found
+    private static final int[] BUFFER_MINUTES = { 5, 10, 15 };
+    
+    // awk program of the remote prefilter; records are the text between "**********" delimiters.
+    // A kept entry without a timestamp is preceded by an entry holding only the last timestamp seen,
+    // so the local time window judges it as it would in the whole file.
+    private static final String PREFILTER_PROGRAM = String.join("\n",
+        "BEGIN { RS = \"[*][*][*][*][*][*][*][*][*][*]\"; n = split(ids, list, \",\");",
+        "  for (i = 1; i <= n; i++) wanted[list[i]] = 1 }",
+        "{ id = \"\"; thread = \"\"; keep = 0; text = $0; sub(/^[ \\t\\r\\n]+/, \"\", text)",
+        "  stamped = (text ~ /^[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9][ T][0-9][0-9]:[0-9][0-9]:[0-9][0-9]/)",
+        "  if (stamped) stamp = substr(text, 1, 19)",
+        "  if (match($0, /FileProcessId:[0-9]+/)) { id = substr($0, RSTART + 14, RLENGTH - 14); sub(/^0+/, \"\", id); if (id == \"\") id = \"0\" }",
+        "  if (match($0, /Thread:[ \\t]*[[][^]]+[]]/)) { thread = substr($0, RSTART, RLENGTH); sub(/^Thread:[ \\t]*/, \"\", thread) }",
+        "  if (id != \"\" && (id in wanted)) { keep = 1; if (thread != \"\") threads[thread] = 1 }",
+        "  else if (related && (id == \"\" || id == \"0\") && thread != \"\" && (thread in threads)) keep = 1",
+        "  if (keep && !stamped && stamp != sent) printf \"**********\\n%s\\n\", stamp",
+        "  if (keep) { sent = stamp; printf \"**********%s\", $0 } }");
+    
     private final ConfigService configService;
+    private final SftpSessionPool sessionPool;
+    
+    // Server types whose hosts cannot run the prefilter
+    private final Set<String> prefilterUnavailable = ConcurrentHashMap.newKeySet();
+    
+    @Value("${sftp.exec.timeout-ms:120000}")
+    private long execTimeoutMs;
+    
+    @Value("${sftp.discovery.batched:true}")
+    private boolean batchedDiscovery;
+    
+    @Value("${sftp.prefilter.enabled:false}")
+    private boolean prefilterEnabled;
     
     @Autowired
-    public SftpService(ConfigService configService) {
+    public SftpService(ConfigService configService, SftpSessionPool sessionPool) {
         this.configService = configService;
+        this.sessionPool = sessionPool;
     }
     
     /**
-     * Create an SFTP session
+     * Find log files in the SFTP server
      * @param serverType "staging" or "production"
-     * @return A JSch Session
+     * @param serviceName Service name to filter files
+     * @param startTime Start time for file filtering
+     * @param endTime End time for file filtering
+     * @return List of file paths
      */
-    private Session createSftpSession(String serverType) throws JSchException {
-        Config config = configService.getConfig();
-        Config.SftpConfig sftpConfig = config.getSftp();
-        
-        String host = "staging".equals(serverType) ? sftpConfig.getStagingHost() : sftpConfig.getProdHost();
-        String username = "staging".equals(serverType) ? sftpConfig.getStagingUsername() : sftpConfig.getProdUsername();
-        String password = "staging".equals(serverType) ? sftpConfig.getStagingPassword() : sftpConfig.getProdPassword();
-        
-        logger.info("Connecting to SFTP server at {}@{}", username, host);
-        
-        JSch jsch = new JSch();
-        Session session = jsch.getSession(username, host, 22);
-        session.setPassword(password);
-        
-        // Skip host key checking (not recommended for production)
-        Properties config2 = new Properties();
-        config2.put("StrictHostKeyChecking", "no");
-        session.setConfig(config2);
-        
-        session.connect();
-        return session;
+    public List<String> findLogFiles(String serverType, String serviceName, String startTime, String endTime) {
+        List<String> paths = new ArrayList<>();
+        for (LogFileInfo file : findLogFiles(serverType, List.of(serviceName), startTime, endTime).get(serviceName)) {
+            paths.add(file.getPath());
+        }
+        return paths;
     }
     
     /**
-     * Find log files in the SFTP server
+     * Find log files for several services at once.
+     * Discovery runs once with the widest buffer (15 minutes) around the time range and reports each
+     * file's modification time; every service then gets the files of the narrowest buffer (5, 10, then
+     * 15 minutes) that finds any for it. This gives the same files as retrying with wider buffers, in
+     * one remote round trip. In batched mode that is a single find over the root path for all services,
+     * which also reports file sizes; otherwise each service is searched per directory as before.
      * @param serverType "staging" or "production"
-     * @param serviceName Service name to filter files
+     * @param serviceNames Service names to find files for
      * @param startTime Start time for file filtering
      * @param endTime End time for file filtering
-     * @return List of file paths
+     * @return Files per service, in the order of the given service names
      */
-    public List<String> findLogFiles(String serverType, String serviceName, String startTime, String endTime) {
-        Session session = null;
-        ChannelExec channel = null;
-        List<String> files = new ArrayList<>();
+    public Map<String, List<LogFileInfo>> findLogFiles(String serverType, List<String> serviceNames,
+                                                       String startTime, String endTime) {
+        Map<String, List<LogFileInfo>> result = new LinkedHashMap<>();
+        for (String serviceName : serviceNames) {
+            result.put(serviceName, new ArrayList<>());
+        }
         
+        SftpSessionPool.PooledSession pooled = null;
         try {
-            session = createSftpSession(serverType);
+            pooled = sessionPool.borrow(serverType);
+            Session session = pooled.getSession();
             
-            Config config = configService.getConfig();
-            Config.SftpConfig sftpConfig = config.getSftp();
+            Config.SftpConfig sftpConfig = configService.getConfig().getSftp();
             String rootPath = "staging".equals(serverType) ? sftpConfig.getStagingPath() : sftpConfig.getProdPath();
             
-            // Try with 5-minute buffer first
-            int bufferMinutes = 5;
-            files = findLogFilesWithBuffer(session, rootPath, serviceName, startTime, endTime, bufferMinutes);
+            Discovery discovery = batchedDiscovery
+                ? discoverLogFiles(session, rootPath, serviceNames, startTime, endTime)
+                : findLogFilesWithBuffer(session, rootPath, serviceNames, startTime, endTime);
             
-            // If no files found, try with 10-minute buffer
-            if (files.isEmpty()) {
-                bufferMinutes = 10;
-                logger.info("No files found with 5-minute buffer. Trying with 10-minute buffer...");
-                files = findLogFilesWithBuffer(session, rootPath, serviceName, startTime, endTime, bufferMinutes);
-                
-                // If still no files, try with 15-minute buffer as last resort
-                if (files.isEmpty()) {
-                    bufferMinutes = 15;
-                    logger.info("No files found with 10-minute buffer. Trying with 15-minute buffer...");
-                    files = findLogFilesWithBuffer(session, rootPath, serviceName, startTime, endTime, bufferMinutes);
-                }
+            for (String serviceName : serviceNames) {
+                result.put(serviceName, narrowestBuffer(serviceName, discovery.files.get(serviceName),
+                    discovery.startSeconds, discovery.endSeconds));
             }
-            
-            logger.info("Found {} log files for service {} with {} minute buffer", files.size(), serviceName, bufferMinutes);
-            
-        } catch (JSchException e) {
+        } catch (JSchException | IOException e) {
             logger.error("Error finding log files", e);
+        } catch (ParseException e) {
+            logger.error("Error parsing date for time buffer adjustment", e);
         } finally {
-            if (channel != null) {
-                channel.disconnect();
+            sessionPool.release(pooled);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Pick the files of the narrowest buffer that finds any, by their modification times
+     * @param files Files found with the widest buffer
+     * @param startSeconds Start of the time range on the server, or -1 if unknown
+     * @param endSeconds End of the time range on the server, or -1 if unknown
+     */
+    private List<LogFileInfo> narrowestBuffer(String serviceName, List<LogFileInfo> files,
+                                              long startSeconds, long endSeconds) {
+        int widest = BUFFER_MINUTES[BUFFER_MINUTES.length - 1];
+        if (files.isEmpty() || startSeconds < 0 || endSeconds < 0) {
+            logger.info("Found {} log files for service {} with {} minute buffer", files.size(), serviceName, widest);
+            return files;
+        }
+        for (int bufferMinutes : BUFFER_MINUTES) {
+            // Same bounds as find: newer than the start, not newer than the end
+            long from = (startSeconds - bufferMinutes * 60L) * 1000;
+            long to = (endSeconds + bufferMinutes * 60L) * 1000;
+            List<LogFileInfo> selected = new ArrayList<>();
+            for (LogFileInfo file : files) {
+                if (file.getModifiedTime() > from && file.getModifiedTime() <= to) {
+                    selected.add(file);
+                }
             }
-            if (session != null) {
-                session.disconnect();
+            if (!selected.isEmpty()) {
+                logger.info("Found {} log files for service {} with {} minute buffer",
+                    selected.size(), serviceName, bufferMinutes);
+                return selected;
             }
         }
-        
         return files;
     }
     
     /**
-     * Find log files with a specific time buffer
+     * Run one remote find for all given services with the widest buffer and assign the files found to them.
+     * Files inside a "&lt;service&gt;*_Logs" directory belong to that service; a service without
+     * such a directory falls back to files named "&lt;service&gt;*.log*" anywhere under the root.
      * @param session SFTP session
      * @param rootPath Root path to search in
-     * @param serviceName Service name to filter files
+     * @param serviceNames Service names to find files for
      * @param startTime Start time for file filtering
      * @param endTime End time for file filtering
-     * @param bufferMinutes Minutes to add as buffer before and after the time range
-     * @return List of file paths
+     * @return Files per service, oldest first, and the time range as the server reads it
      */
-    private List<String> findLogFilesWithBuffer(Session session, String rootPath, String serviceName, 
-                                           String startTime, String endTime, int bufferMinutes) {
-        ChannelExec channel = null;
-        List<String> files = new ArrayList<>();
+    private Discovery discoverLogFiles(Session session, String rootPath, List<String> serviceNames,
+                                       String startTime, String endTime)
+            throws JSchException, IOException, ParseException {
+        int bufferMinutes = BUFFER_MINUTES[BUFFER_MINUTES.length - 1];
+        String adjustedStartTime = adjustTimeWithBuffer(startTime, -bufferMinutes);
+        String adjustedEndTime = adjustTimeWithBuffer(endTime, bufferMinutes);
         
-        try {
-            // Add buffer to the time range
-            String adjustedStartTime = adjustTimeWithBuffer(startTime, -bufferMinutes);
-            String adjustedEndTime = adjustTimeWithBuffer(endTime, bufferMinutes);
-            
-            logger.info("Searching with {} minute buffer - Time range: {} to {}", 
-                   bufferMinutes, adjustedStartTime, adjustedEndTime);
-            
-            // First find service directories matching the pattern
-            String findDirsCommand = String.format(
-                "find %s -type d -name \"%s*_Logs\"",
-                rootPath, serviceName
-            );
-            
-            logger.info("Finding service directories: {}", findDirsCommand);
-            
-            channel = (ChannelExec) session.openChannel("exec");
-            channel.setCommand(findDirsCommand);
-            
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            channel.setOutputStream(outputStream);
-            channel.connect();
-            
-            // Wait for command to complete
-            while (channel.isConnected()) {
+        // Service directories print as "D<tab>path", files in the window as "F<tab>path<tab>size<tab>mtime"
+        StringBuilder dirNames = new StringBuilder();
+        for (String serviceName : serviceNames) {
+            if (dirNames.length() > 0) {
+                dirNames.append(" -o ");
+            }
+            dirNames.append("-name ").append(shellQuote(serviceName + "*_Logs"));
+        }
+        String command = timeRangeCommand(startTime, endTime)
+            + "find " + shellQuote(rootPath)
+            + " \\( -type d \\( " + dirNames + " \\) -printf 'D\\t%p\\n' \\)"
+            + " -o \\( -type f -name '*.log*' -newermt " + shellQuote(adjustedStartTime)
+            + " ! -newermt " + shellQuote(adjustedEndTime) + " -printf 'F\\t%p\\t%s\\t%T@\\n' \\)";
+        
+        logger.info("Discovering log files with {} minute buffer ({} to {}): {}",
+            bufferMinutes, adjustedStartTime, adjustedEndTime, command);
+        
+        Discovery discovery = new Discovery();
+        List<String> dirs = new ArrayList<>();
+        List<LogFileInfo> files = new ArrayList<>();
+        for (String line : exec(session, command)) {
+            String[] fields = line.split("\t");
+            if (discovery.parseTimeRange(fields)) {
+                continue;
+            }
+            if (fields.length == 2 && "D".equals(fields[0])) {
+                dirs.add(fields[1]);
+            } else if (fields.length == 4 && "F".equals(fields[0])) {
                 try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                    long modifiedTime = (long) (Double.parseDouble(fields[3]) * 1000);
+                    files.add(new LogFileInfo(null, fields[1], Long.parseLong(fields[2]), modifiedTime));
+                } catch (NumberFormatException e) {
+                    logger.warn("Skipping unparseable find output: {}", line);
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(LogFileInfo::getModifiedTime).thenComparing(LogFileInfo::getPath));
+        
+        for (String serviceName : serviceNames) {
+            List<String> serviceDirs = new ArrayList<>();
+            for (String dir : dirs) {
+                String dirName = fileName(dir);
+                if (dirName.startsWith(serviceName) && dirName.endsWith("_Logs")) {
+                    serviceDirs.add(dir + "/");
                 }
             }
             
-            // Parse service directories
-            String output = outputStream.toString();
-            String[] serviceDirs = output.split("\n");
+            List<LogFileInfo> serviceFiles = new ArrayList<>();
+            for (LogFileInfo file : files) {
+                String path = file.getPath();
+                boolean matches;
+                if (serviceDirs.isEmpty()) {
+                    matches = fileName(path).startsWith(serviceName) && (path.endsWith(".log") || path.endsWith(".gz"));
+                } else {
+                    matches = (path.endsWith(".log") || path.endsWith(".log.gz"))
+                        && serviceDirs.stream().anyMatch(path::startsWith);
+                }
+                if (matches) {
+                    serviceFiles.add(new LogFileInfo(serviceName, path, file.getSize(), file.getModifiedTime()));
+                }
+            }
+            discovery.files.put(serviceName, serviceFiles);
+        }
+        return discovery;
+    }
+    
+    /**
+     * Commands printing the time range as the server reads it, as "S&lt;tab&gt;epoch" and "E&lt;tab&gt;epoch",
+     * so file modification times can be compared with it locally in the server's time zone
+     */
+    private static String timeRangeCommand(String startTime, String endTime) {
+        return "date -d " + shellQuote(startTime) + " '+S%t%s' 2>/dev/null; "
+            + "date -d " + shellQuote(endTime) + " '+E%t%s' 2>/dev/null; ";
+    }
+    
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+    
+    /**
+     * Quote a value as a single shell word
+     */
+    private static String shellQuote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+    
+    /**
+     * Find log files per service and directory with the widest buffer
+     * @param session SFTP session
+     * @param rootPath Root path to search in
+     * @param serviceNames Service names to find files for
+     * @param startTime Start time for file filtering
+     * @param endTime End time for file filtering
+     * @return Files per service with their modification times, oldest first
+     */
+    private Discovery findLogFilesWithBuffer(Session session, String rootPath, List<String> serviceNames,
+                                             String startTime, String endTime)
+            throws JSchException, IOException, ParseException {
+        int bufferMinutes = BUFFER_MINUTES[BUFFER_MINUTES.length - 1];
+        
+        // Add buffer to the time range
+        String adjustedStartTime = adjustTimeWithBuffer(startTime, -bufferMinutes);
+        String adjustedEndTime = adjustTimeWithBuffer(endTime, bufferMinutes);
+        String timeFilter = " -newermt " + shellQuote(adjustedStartTime) + " ! -newermt " + shellQuote(adjustedEndTime)
+            + " -printf '%T@\\t%p\\n'";
+        
+        logger.info("Searching with {} minute buffer - Time range: {} to {}", 
+               bufferMinutes, adjustedStartTime, adjustedEndTime);
+        
+        Discovery discovery = new Discovery();
+        for (String line : exec(session, timeRangeCommand(startTime, endTime))) {
+            discovery.parseTimeRange(line.split("\t"));
+        }
+        
+        for (String serviceName : serviceNames) {
+            // First find service directories matching the pattern
+            String findDirsCommand = "find " + shellQuote(rootPath) + " -type d -name " + shellQuote(serviceName + "*_Logs");
+            logger.info("Finding service directories: {}", findDirsCommand);
+            List<String> serviceDirs = exec(session, findDirsCommand);
             
-            if (serviceDirs.length == 0 || (serviceDirs.length == 1 && serviceDirs[0].trim().isEmpty())) {
+            List<LogFileInfo> files = new ArrayList<>();
+            if (serviceDirs.isEmpty()) {
                 logger.warn("No service directories found for {}. Falling back to direct file search.", serviceName);
                 
-                // Fall back to direct file search if no directories found
-                channel.disconnect();
-                
-                // Build find command for direct file search
-                String findFilesCommand = String.format(
-                    "find %s -type f -name \"%s*.log*\" -newermt \"%s\" ! -newermt \"%s\"",
-                    rootPath, serviceName, adjustedStartTime, adjustedEndTime
-                );
-                
+                String findFilesCommand = "find " + shellQuote(rootPath) + " -type f -name "
+                    + shellQuote(serviceName + "*.log*") + timeFilter;
                 logger.info("Executing direct file search: {}", findFilesCommand);
                 
-                channel = (ChannelExec) session.openChannel("exec");
-                channel.setCommand(findFilesCommand);
-                
-                outputStream = new ByteArrayOutputStream();
-                channel.setOutputStream(outputStream);
-                channel.connect();
-                
-                // Wait for command to complete
-                while (channel.isConnected()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
+                for (String line : exec(session, findFilesCommand)) {
+                    addFile(files, serviceName, line, false);
                 }
-                
-                // Parse output
-                output = outputStream.toString();
-                String[] lines = output.split("\n");
-                for (String line : lines) {
-                    if (line.trim().endsWith(".log") || line.trim().endsWith(".gz")) {
-                        files.add(line.trim());
+            } else {
+                // For each service directory, find log files in the buffered time range
+                for (String serviceDir : serviceDirs) {
+                    String findFilesCommand = "find " + shellQuote(serviceDir)
+                        + " -type f \\( -name '*.log' -o -name '*.log.gz' \\)" + timeFilter;
+                    logger.info("Finding log files in directory {}: {}", serviceDir, findFilesCommand);
+                    
+                    for (String line : exec(session, findFilesCommand)) {
+                        addFile(files, serviceName, line, true);
                     }
                 }
-                
-                return files;
             }
-            
-            // For each service directory, find log files
-            for (String serviceDir : serviceDirs) {
-                if (serviceDir.trim().isEmpty()) continue;
-                
-                channel.disconnect();
-                
-                // Build find command for log files in this directory
-                // Using proper grouping with $$ and $$ for the find command
-                String findFilesCommand = String.format(
-                	    "find %s -type f -name \"*.log\" -o -name \"*.log.gz\" -newermt \"%s\" ! -newermt \"%s\"",
-                	    serviceDir.trim(), startTime, endTime
-                	);
-                
-                logger.info("Finding log files in directory {}: {}", serviceDir, findFilesCommand);
-                
-                channel = (ChannelExec) session.openChannel("exec");
-                channel.setCommand(findFilesCommand);
-                
-                outputStream = new ByteArrayOutputStream();
-                channel.setOutputStream(outputStream);
-                channel.connect();
-                
-                // Wait for command to complete
-                while (channel.isConnected()) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                
-                // Parse log files
-                output = outputStream.toString();
-                String[] logFiles = output.split("\n");
-                
-                for (String logFile : logFiles) {
-                    if (!logFile.trim().isEmpty()) {
-                        files.add(logFile.trim());
-                    }
+            files.sort(Comparator.comparingLong(LogFileInfo::getModifiedTime).thenComparing(LogFileInfo::getPath));
+            discovery.files.put(serviceName, files);
+        }
+        return discovery;
+    }
+    
+    /**
+     * Add a file from "mtime&lt;tab&gt;path" find output
+     */
+    private void addFile(List<LogFileInfo> files, String serviceName, String line, boolean inServiceDir) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return;
+        }
+        String path = line.substring(tab + 1);
+        if (!inServiceDir && !path.endsWith(".log") && !path.endsWith(".gz")) {
+            return;
+        }
+        try {
+            long modifiedTime = (long) (Double.parseDouble(line.substring(0, tab)) * 1000);
+            files.add(new LogFileInfo(serviceName, path, -1, modifiedTime));
+        } catch (NumberFormatException e) {
+            logger.warn("Skipping unparseable find output: {}", line);
+        }
+    }
+    
+    /**
+     * Run a command on the SFTP host and wait for its non-empty output lines
+     * @param session Connected session
+     * @param command Shell command
+     * @return Trimmed, non-empty stdout lines
+     */
+    private List<String> exec(Session session, String command) throws JSchException, IOException {
+        List<String> lines = new ArrayList<>();
+        CompletableFuture<Integer> result = execAsync(session, command, line -> {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) {
+                lines.add(trimmed);
+            }
+        }, execTimeoutMs);
+        
+        try {
+            int exitStatus = result.get();
+            if (exitStatus != 0) {
+                logger.debug("Command exited with status {}: {}", exitStatus, command);
+            }
+            return lines;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            throw new IOException("Interrupted while running remote command", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Remote command failed: " + command, e.getCause());
+        }
+    }
+    
+    /**
+     * Run a command on the SFTP host without waiting for it.
+     * Stdout is split into lines and passed to the consumer as it arrives, on the SSH session's
+     * reader thread, so the consumer must not block. The returned future completes with the
+     * command's exit status as soon as the channel closes (-1 if the server did not send one),
+     * fails with a TimeoutException after the timeout, and cancelling it closes the channel.
+     * @param session Connected session
+     * @param command Shell command
+     * @param onLine Receives each stdout line without its line terminator
+     * @param timeoutMs Timeout in milliseconds, or 0 for none
+     * @return Future exit status
+     */
+    public CompletableFuture<Integer> execAsync(Session session, String command, Consumer<String> onLine,
+                                                long timeoutMs) throws JSchException {
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        channel.setCommand(command);
+        
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        LineOutputStream stdout = new LineOutputStream(onLine);
+        ExitStatusStream stderr = new ExitStatusStream(channel);
+        stderr.exitStatus.thenAccept(exitStatus -> {
+            if (stdout.failure != null) {
+                result.completeExceptionally(stdout.failure);
+            } else {
+                if (exitStatus != 0 && stderr.size() > 0) {
+                    logger.debug("Remote command stderr: {}", stderr.toString(StandardCharsets.UTF_8).trim());
                 }
+                result.complete(exitStatus);
             }
+        });
+        channel.setOutputStream(stdout);
+        channel.setErrStream(stderr);
+        
+        // Timeout and cancellation close the channel, which stops the remote command
+        result.whenComplete((status, error) -> channel.disconnect());
+        if (timeoutMs > 0) {
+            result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        
+        try {
+            channel.connect();
         } catch (JSchException e) {
-            logger.error("Error finding log files with buffer {}", bufferMinutes, e);
-        } catch (ParseException e) {
-            logger.error("Error parsing date for time buffer adjustment", e);
-        } finally {
-            if (channel != null) {
-                channel.disconnect();
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return result;
+    }
+    
+    /**
+     * Files found per service with the widest buffer, and the time range in server epoch seconds
+     */
+    private static class Discovery {
+        private final Map<String, List<LogFileInfo>> files = new LinkedHashMap<>();
+        private long startSeconds = -1;
+        private long endSeconds = -1;
+        
+        /**
+         * Take the time range from a line of {@link #timeRangeCommand(String, String)} output
+         * @return false if the line is something else
+         */
+        boolean parseTimeRange(String[] fields) {
+            if (fields.length != 2 || !("S".equals(fields[0]) || "E".equals(fields[0]))) {
+                return false;
+            }
+            try {
+                long seconds = Long.parseLong(fields[1].trim());
+                if ("S".equals(fields[0])) {
+                    startSeconds = seconds;
+                } else {
+                    endSeconds = seconds;
+                }
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
             }
         }
+    }
+    
+    /**
+     * Collects a command's stderr and completes {@link #exitStatus} when JSch closes the stream,
+     * which happens when the channel is closed, after stdout and the exit status have arrived
+     */
+    private static class ExitStatusStream extends ByteArrayOutputStream {
+        private final ChannelExec channel;
+        private final CompletableFuture<Integer> exitStatus = new CompletableFuture<>();
+
+        ExitStatusStream(ChannelExec channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() {
+            // -1 if the server did not send an exit status
+            exitStatus.complete(channel.getExitStatus());
+        }
+    }
+
+    /**
+     * Output stream that splits UTF-8 output into lines and hands them to a consumer
+     */
+    private static class LineOutputStream extends OutputStream {
+        private final Consumer<String> onLine;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private volatile RuntimeException failure;
         
-        return files;
+        LineOutputStream(Consumer<String> onLine) {
+            this.onLine = onLine;
+        }
+        
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                emit();
+            } else {
+                line.write(b);
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    line.write(b, start, i - start);
+                    emit();
+                    start = i + 1;
+                }
+            }
+            line.write(b, start, off + len - start);
+        }
+        
+        @Override
+        public void close() {
+            if (line.size() > 0) {
+                emit();
+            }
+        }
+        
+        private void emit() {
+            String text = line.toString(StandardCharsets.UTF_8);
+            line.reset();
+            if (failure != null) {
+                return;
+            }
+            try {
+                onLine.accept(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+            } catch (RuntimeException e) {
+                // Keep draining the channel; the failure is reported through the future
+                failure = e;
+            }
+        }
     }
     
     /**
@@ -282,6 +566,302 @@ public class SftpService {
         return format.format(calendar.getTime());
     }
     
+    /**
+     * Get the size and modification time of a remote file
+     * @param serverType "staging" or "production"
+     * @param remotePath Remote file path
+     * @return File info with size and modification time (second precision), or null if the file cannot be read
+     */
+    public LogFileInfo statFile(String serverType, String remotePath) {
+        SftpSessionPool.PooledSession pooled = null;
+        ChannelSftp channel = null;
+        
+        try {
+            pooled = sessionPool.borrow(serverType);
+            channel = pooled.borrowSftpChannel();
+            SftpATTRS attrs = channel.stat(remotePath);
+            return new LogFileInfo(null, remotePath, attrs.getSize(), attrs.getMTime() * 1000L);
+        } catch (JSchException | SftpException e) {
+            logger.warn("Cannot stat {}: {}", remotePath, e.getMessage());
+            return null;
+        } finally {
+            if (pooled != null) {
+                pooled.returnSftpChannel(channel);
+            }
+            sessionPool.release(pooled);
+        }
+    }
+    
+    /**
+     * Reads a remote file while its SFTP channel is open
+     */
+    @FunctionalInterface
+    public interface RemoteFileHandler {
+        void handle(InputStream in) throws IOException;
+    }
+    
+    /**
+     * Open a file on the SFTP server and pass its content to the handler as it is transferred,
+     * without holding the whole file in memory. The stream is closed when the handler returns.
+     * @param serverType "staging" or "production"
+     * @param remotePath Remote file path
+     * @param handler Reads the file content
+     * @return false if the file could not be opened
+     * @throws IOException If the handler fails
+     */
+    public boolean streamFile(String serverType, String remotePath, RemoteFileHandler handler) throws IOException {
+        SftpSessionPool.PooledSession pooled = null;
+        ChannelSftp channel = null;
+        boolean completed = false;
+        
+        try {
+            InputStream inputStream;
+            try {
+                pooled = sessionPool.borrow(serverType);
+                channel = pooled.borrowSftpChannel();
+                
+                logger.info("Streaming file: {}", remotePath);
+                inputStream = channel.get(remotePath);
+            } catch (JSchException | SftpException e) {
+                logger.error("Error opening file {}", remotePath, e);
+                completed = true;
+                return false;
+            }
+            
+            try (InputStream in = inputStream) {
+                handler.handle(in);
+            }
+            completed = true;
+            return true;
+        } finally {
+            // A transfer abandoned half way may leave replies in flight, so don't reuse that channel
+            if (!completed && channel != null) {
+                channel.disconnect();
+            }
+            if (pooled != null) {
+                pooled.returnSftpChannel(channel);
+            }
+            sessionPool.release(pooled);
+        }
+    }
+    
+    /**
+     * Opens a remote file at any offset
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+        /**
+         * @param offset Position to start reading at
+         * @return Stream of the file from that position; the caller must close it before opening another
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    /**
+     * Reads parts of a remote file while its SFTP channel is open
+     */
+    @FunctionalInterface
+    public interface RandomAccessHandler {
+        void handle(RangeOpener file, long size) throws IOException;
+    }
+
+    /**
+     * Open a file on the SFTP server for reading from arbitrary offsets, so that the handler
+     * can jump to the part it needs instead of transferring the whole file.
+     * @param serverType "staging" or "production"
+     * @param remotePath Remote file path
+     * @param handler Reads the file
+     * @return false if the file could not be opened
+     * @throws IOException If the handler fails
+     */
+    public boolean accessFile(String serverType, String remotePath, RandomAccessHandler handler) throws IOException {
+        SftpSessionPool.PooledSession pooled = null;
+        ChannelSftp channel = null;
+        boolean completed = false;
+
+        try {
+            long size;
+            try {
+                pooled = sessionPool.borrow(serverType);
+                channel = pooled.borrowSftpChannel();
+                size = channel.stat(remotePath).getSize();
+            } catch (JSchException | SftpException e) {
+                logger.error("Error opening file {}", remotePath, e);
+                completed = true;
+                return false;
+            }
+
+            ChannelSftp open = channel;
+            logger.info("Reading file: {} ({} bytes)", remotePath, size);
+            handler.handle(offset -> {
+                try {
+                    return open.get(remotePath, null, offset);
+                } catch (SftpException e) {
+                    throw new IOException("Cannot read " + remotePath + " at " + offset + ": " + e.getMessage(), e);
+                }
+            }, size);
+            completed = true;
+            return true;
+        } finally {
+            // A transfer abandoned half way may leave replies in flight, so don't reuse that channel
+            if (!completed && channel != null) {
+                channel.disconnect();
+            }
+            if (pooled != null) {
+                pooled.returnSftpChannel(channel);
+            }
+            sessionPool.release(pooled);
+        }
+    }
+
+    /**
+     * Filter a log file on the SFTP host and pass only the candidate entries to the handler, as
+     * "**********"-delimited entries in file order. The host decompresses the file if needed and
+     * keeps the entries whose first FileProcessId is one of the given ones and, with related threads,
+     * the entries without an FPID (or with FileProcessId:0) of a thread that an earlier kept entry had.
+     * This is a superset of what {@link com.ev.tradeedge.marketconnect.logscan.LogEntryMatcher}
+     * writes, so the result must still be scanned locally.
+     * <p>
+     * Only runs when sftp.prefilter.enabled is set. Needs gawk or mawk on the host for the
+     * multi-character record separator; when neither is installed the host is remembered and later
+     * calls return false straight away. The program avoids POSIX character classes and interval
+     * expressions, which mawk 1.3.3 (still the default awk on many Debian and Ubuntu hosts) lacks.
+     * Tested with mawk 1.3.4.
+     * @param serverType "staging" or "production"
+     * @param remotePath Remote file path
+     * @param fpids FileProcessIds to keep
+     * @param includeRelatedThreads Also keep FPID-less entries of the matched threads
+     * @param handler Reads the filtered entries
+     * @return false if the filter could not run, in which case the handler has read nothing
+     * @throws IOException If the handler fails or the filter fails after producing output
+     */
+    public boolean prefilterFile(String serverType, String remotePath, long[] fpids, boolean includeRelatedThreads,
+                                 RemoteFileHandler handler) throws IOException {
+        if (!prefilterEnabled || prefilterUnavailable.contains(serverType)) {
+            return false;
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (long fpid : fpids) {
+            ids.append(ids.length() > 0 ? "," : "").append(fpid);
+        }
+        String command = "[ -r " + shellQuote(remotePath) + " ] || exit 2; "
+            + "AWK=$(command -v gawk || command -v mawk) || exit 127; "
+            + "gzip -dcf -- " + shellQuote(remotePath)
+            + " | \"$AWK\" -v ids=" + ids + " -v related=" + (includeRelatedThreads ? 1 : 0) + " '" + PREFILTER_PROGRAM + "'";
+
+        SftpSessionPool.PooledSession pooled = null;
+        ChannelExec channel = null;
+        try {
+            InputStream inputStream;
+            ExitStatusStream stderr;
+            try {
+                pooled = sessionPool.borrow(serverType);
+                channel = (ChannelExec) pooled.getSession().openChannel("exec");
+                channel.setCommand(command);
+                stderr = new ExitStatusStream(channel);
+                channel.setErrStream(stderr);
+                inputStream = channel.getInputStream();
+
+                logger.info("Filtering file on server: {}", remotePath);
+                channel.connect();
+            } catch (JSchException e) {
+                logger.warn("Cannot run log prefilter for {}: {}", remotePath, e.getMessage());
+                return false;
+            }
+
+            // Nothing is written before the checks pass, so an early exit leaves the handler untouched
+            PushbackInputStream in = new PushbackInputStream(inputStream, 1);
+            int first = in.read();
+            if (first < 0) {
+                int exitStatus;
+                try {
+                    exitStatus = awaitExitStatus(stderr, remotePath);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    logger.warn("Log prefilter failed for {}: {}", remotePath, e.getMessage());
+                    return false;
+                }
+                if (exitStatus == 127) {
+                    logger.warn("Log prefilter unavailable on {} (needs gawk or mawk), reading whole files", serverType);
+                    prefilterUnavailable.add(serverType);
+                    return false;
+                }
+                if (exitStatus != 0) {
+                    logger.warn("Log prefilter exited with status {} for {}", exitStatus, remotePath);
+                    return false;
+                }
+            } else {
+                in.unread(first);
+            }
+
+            boolean[] ended = new boolean[1];
+            try (InputStream filtered = new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    ended[0] |= b < 0;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    ended[0] |= n < 0;
+                    return n;
+                }
+            }) {
+                handler.handle(filtered);
+            }
+            if (!ended[0]) {
+                // The handler stopped early; closing the channel stops the remote command
+                return true;
+            }
+            int exitStatus = awaitExitStatus(stderr, remotePath);
+            String errors = stderr.toString(StandardCharsets.UTF_8).trim();
+            if (exitStatus != 0 || !errors.isEmpty()) {
+                // e.g. a corrupt gzip file; the pipeline status only reflects awk
+                throw new IOException("Remote filter failed (status " + exitStatus + ")"
+                    + (errors.isEmpty() ? "" : ": " + errors));
+            }
+            return true;
+        } finally {
+            if (channel != null) {
+                channel.disconnect();
+            }
+            sessionPool.release(pooled);
+        }
+    }
+
+    /**
+     * Wait for the channel of a command to close after its output ended, up to sftp.exec.timeout-ms
+     * @param stderr The command's stderr stream
+     * @param remotePath File the command reads, for messages
+     * @return Exit status of the command
+     * @throws IOException If the channel does not close in time or the server sent no exit status
+     */
+    private int awaitExitStatus(ExitStatusStream stderr, String remotePath) throws IOException {
+        CompletableFuture<Integer> exitStatus = stderr.exitStatus;
+        if (execTimeoutMs > 0) {
+            exitStatus = exitStatus.orTimeout(execTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        int status;
+        try {
+            status = exitStatus.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for remote command");
+        } catch (ExecutionException e) {
+            throw new IOException("Remote command for " + remotePath + " did not finish in " + execTimeoutMs + " ms",
+                e.getCause());
+        }
+        if (status < 0) {
+            throw new IOException("Remote command for " + remotePath + " ended without an exit status");
+        }
+        return status;
+    }
+
     /**
      * Download a file from the SFTP server
      * @param serverType "staging" or "production"
@@ -289,14 +869,12 @@ public class SftpService {
      * @return File content as byte array
      */
     public byte[] downloadFile(String serverType, String remotePath) {
-        Session session = null;
+        SftpSessionPool.PooledSession pooled = null;
         ChannelSftp channel = null;
         
         try {
-            session = createSftpSession(serverType);
-            
-            channel = (ChannelSftp) session.openChannel("sftp");
-            channel.connect();
+            pooled = sessionPool.borrow(serverType);
+            channel = pooled.borrowSftpChannel();
             
             logger.info("Downloading file: {}", remotePath);
             
@@ -317,12 +895,10 @@ public class SftpService {
             logger.error("Error downloading file", e);
             return new byte[0];
         } finally {
-            if (channel != null) {
-                channel.disconnect();
-            }
-            if (session != null) {
-                session.disconnect();
+            if (pooled != null) {
+                pooled.returnSftpChannel(channel);
             }
+            sessionPool.release(pooled);
         }
     }
 }
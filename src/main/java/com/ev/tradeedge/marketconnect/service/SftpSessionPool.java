@@ -0,0 +1,365 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.ev.tradeedge.marketconnect.model.Config;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pool of authenticated SSH sessions per server type ("staging" or "production").
+ * Each borrowed session is used by one caller at a time and keeps its own small pool of
+ * open SFTP channels, so repeated downloads reuse both the SSH connection and the channel.
+ * Sessions send keep-alives while in use, are health-checked before they are handed out,
+ * and are closed after they have been idle for too long.
+ */
+@Component
+public class SftpSessionPool {
+    private static final Logger logger = LoggerFactory.getLogger(SftpSessionPool.class);
+
+    private final ConfigService configService;
+
+    private final Map<String, KeyedPool> pools = new ConcurrentHashMap<>();
+
+    @Value("${sftp.pool.max-sessions:4}")
+    private int maxSessions;
+
+    @Value("${sftp.pool.max-idle-channels:2}")
+    private int maxIdleChannels;
+
+    @Value("${sftp.pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${sftp.pool.keep-alive-interval-ms:30000}")
+    private int keepAliveIntervalMs;
+
+    @Value("${sftp.pool.validation-interval-ms:5000}")
+    private long validationIntervalMs;
+
+    @Value("${sftp.pool.borrow-timeout-ms:60000}")
+    private long borrowTimeoutMs;
+
+    @Value("${sftp.pool.connect-timeout-ms:15000}")
+    private int connectTimeoutMs;
+
+    public SftpSessionPool(ConfigService configService) {
+        this.configService = configService;
+    }
+
+    /**
+     * Borrow a connected session, waiting if the maximum number of sessions is in use.
+     * The session must be handed back with {@link #release(PooledSession)}.
+     * @param serverType "staging" or "production"
+     * @return A connected, authenticated session
+     */
+    public PooledSession borrow(String serverType) throws JSchException {
+        Target target = resolveTarget(serverType);
+        KeyedPool pool = pools.computeIfAbsent(serverType, k -> new KeyedPool());
+
+        try {
+            if (!pool.permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new JSchException("Timed out waiting for an SFTP session to " + target.host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted while waiting for an SFTP session");
+        }
+
+        try {
+            PooledSession session;
+            while ((session = pool.pollIdle()) != null) {
+                if (session.target.equals(target) && isHealthy(session)) {
+                    pool.reused.incrementAndGet();
+                    return session;
+                }
+                session.close();
+            }
+
+            session = new PooledSession(serverType, target, connect(target));
+            pool.created.incrementAndGet();
+            return session;
+        } catch (JSchException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hand a borrowed session back to the pool. Sessions that lost their connection are closed.
+     */
+    public void release(PooledSession session) {
+        if (session == null) {
+            return;
+        }
+        KeyedPool pool = pools.get(session.serverType);
+        if (session.session.isConnected() && pool != null) {
+            session.lastUsed = System.currentTimeMillis();
+            pool.offerIdle(session);
+        } else {
+            session.close();
+        }
+        if (pool != null) {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Close a borrowed session instead of returning it, e.g. after a protocol error
+     */
+    public void invalidate(PooledSession session) {
+        if (session == null) {
+            return;
+        }
+        session.close();
+        KeyedPool pool = pools.get(session.serverType);
+        if (pool != null) {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Close sessions that have been idle longer than the idle timeout
+     */
+    @Scheduled(fixedDelayString = "${sftp.pool.eviction-interval-ms:60000}")
+    public void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (KeyedPool pool : pools.values()) {
+            for (PooledSession session : pool.removeIdleOlderThan(now - idleTimeoutMs)) {
+                logger.info("Closing idle SFTP session to {}", session.target.host);
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Get session counts per server type
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        pools.forEach((serverType, pool) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("inUse", maxSessions - pool.permits.availablePermits());
+            entry.put("idle", pool.idleCount());
+            entry.put("created", pool.created.get());
+            entry.put("reused", pool.reused.get());
+            stats.put(serverType, entry);
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        for (KeyedPool pool : pools.values()) {
+            for (PooledSession session : pool.removeIdleOlderThan(Long.MAX_VALUE)) {
+                session.close();
+            }
+        }
+    }
+
+    private Target resolveTarget(String serverType) {
+        Config.SftpConfig sftpConfig = configService.getConfig().getSftp();
+
+        String host = "staging".equals(serverType) ? sftpConfig.getStagingHost() : sftpConfig.getProdHost();
+        String username = "staging".equals(serverType) ? sftpConfig.getStagingUsername() : sftpConfig.getProdUsername();
+        String password = "staging".equals(serverType) ? sftpConfig.getStagingPassword() : sftpConfig.getProdPassword();
+
+        return new Target(host, username, password);
+    }
+
+    private Session connect(Target target) throws JSchException {
+        logger.info("Connecting to SFTP server at {}@{}", target.username, target.host);
+
+        JSch jsch = new JSch();
+        Session session = jsch.getSession(target.username, target.host, 22);
+        session.setPassword(target.password);
+
+        // Skip host key checking (not recommended for production)
+        Properties config = new Properties();
+        config.put("StrictHostKeyChecking", "no");
+        session.setConfig(config);
+
+        // Keep the connection alive between requests and detect dead peers
+        session.setServerAliveInterval(keepAliveIntervalMs);
+        session.setServerAliveCountMax(3);
+
+        session.connect(connectTimeoutMs);
+        return session;
+    }
+
+    private boolean isHealthy(PooledSession session) {
+        if (!session.session.isConnected()) {
+            return false;
+        }
+        // Sessions used recently are known to be good; older ones get a round trip to the server
+        if (System.currentTimeMillis() - session.lastUsed < validationIntervalMs) {
+            return true;
+        }
+        try {
+            session.session.sendKeepAliveMsg();
+            return session.session.isConnected();
+        } catch (Exception e) {
+            logger.info("Discarding broken SFTP session to {}: {}", session.target.host, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * A pooled SSH session together with its idle SFTP channels
+     */
+    public class PooledSession {
+        private final String serverType;
+        private final Target target;
+        private final Session session;
+        private final Deque<ChannelSftp> idleChannels = new ArrayDeque<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledSession(String serverType, Target target, Session session) {
+            this.serverType = serverType;
+            this.target = target;
+            this.session = session;
+        }
+
+        /**
+         * Get the underlying session, e.g. to open exec channels
+         */
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * Get an open SFTP channel, reusing one from an earlier download if possible.
+         * Hand it back with {@link #returnSftpChannel(ChannelSftp)}.
+         */
+        public ChannelSftp borrowSftpChannel() throws JSchException {
+            ChannelSftp channel;
+            while ((channel = pollIdleChannel()) != null) {
+                if (channel.isConnected() && !channel.isClosed()) {
+                    return channel;
+                }
+                channel.disconnect();
+            }
+            // Connect outside the monitor: blocking in it would pin a virtual thread's carrier
+            channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect(connectTimeoutMs);
+            return channel;
+        }
+
+        /**
+         * Return an SFTP channel for reuse
+         */
+        public void returnSftpChannel(ChannelSftp channel) {
+            if (channel == null) {
+                return;
+            }
+            if (!channel.isConnected() || channel.isClosed() || !offerIdleChannel(channel)) {
+                channel.disconnect();
+            }
+        }
+
+        private synchronized ChannelSftp pollIdleChannel() {
+            return idleChannels.poll();
+        }
+
+        private synchronized boolean offerIdleChannel(ChannelSftp channel) {
+            if (idleChannels.size() >= maxIdleChannels) {
+                return false;
+            }
+            idleChannels.push(channel);
+            return true;
+        }
+
+        synchronized void close() {
+            for (ChannelSftp channel : idleChannels) {
+                channel.disconnect();
+            }
+            idleChannels.clear();
+            session.disconnect();
+        }
+    }
+
+    private class KeyedPool {
+        private final Semaphore permits = new Semaphore(maxSessions, true);
+        private final Deque<PooledSession> idle = new ArrayDeque<>();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong reused = new AtomicLong();
+
+        synchronized PooledSession pollIdle() {
+            // Most recently used first, so rarely needed sessions age out
+            return idle.pollFirst();
+        }
+
+        synchronized void offerIdle(PooledSession session) {
+            idle.addFirst(session);
+        }
+
+        synchronized int idleCount() {
+            return idle.size();
+        }
+
+        synchronized List<PooledSession> removeIdleOlderThan(long cutoff) {
+            List<PooledSession> removed = new ArrayList<>();
+            Iterator<PooledSession> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledSession session = it.next();
+                if (session.lastUsed < cutoff) {
+                    it.remove();
+                    removed.add(session);
+                }
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Host and credentials a session was opened with, so sessions are replaced after a config change
+     */
+    private static class Target {
+        private final String host;
+        private final String username;
+        private final String password;
+
+        Target(String host, String username, String password) {
+            this.host = host;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return Objects.equals(host, other.host)
+                && Objects.equals(username, other.username)
+                && Objects.equals(password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, username, password);
+        }
+    }
+}
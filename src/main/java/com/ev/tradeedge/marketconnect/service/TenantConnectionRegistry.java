@@ -0,0 +1,393 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Registry of tenant connection pools.
+ * Pools are kept in LRU order and capped in number, pools that have not been used for a while
+ * are closed in the background, and connections to tenant databases are capped globally and per
+ * database server (keyed on the mapped server IP).
+ * <p>
+ * The caps apply to open connections, idle ones included. Semaphores bound the connections
+ * checked out; tenant pools keep no minimum of idle connections and close idle ones quickly,
+ * and before a borrow that has to open a new connection, idle connections of other pools are
+ * closed (least recently used pool first) until the new one fits the server and global budget.
+ */
+@Component
+public class TenantConnectionRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(TenantConnectionRegistry.class);
+
+    @Value("${db.tenant.max-pools:50}")
+    private int maxPools;
+
+    @Value("${db.tenant.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${db.tenant.max-connections-per-server:20}")
+    private int maxConnectionsPerServer;
+
+    @Value("${db.tenant.idle-ttl-ms:600000}")
+    private long idleTtlMs;
+
+    @Value("${db.tenant.connection-idle-timeout-ms:10000}")
+    private long connectionIdleTimeoutMs;
+
+    @Value("${db.pool.max-size:10}")
+    private int maxPoolSize;
+
+    @Value("${db.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    // Access-ordered, so iteration starts at the least recently used pool
+    private final LinkedHashMap<String, TenantPool> pools = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, Semaphore> serverPermits = new ConcurrentHashMap<>();
+
+    private Semaphore globalPermits;
+
+    /**
+     * Creates the pool for a tenant target when the registry does not have one yet
+     */
+    @FunctionalInterface
+    interface PoolFactory {
+        /**
+         * @param maxSize Most connections the pool may open
+         * @param idleTimeoutMs How long a connection may stay idle before the pool closes it
+         */
+        ConnectionPool create(int maxSize, long idleTimeoutMs) throws SQLException;
+    }
+
+    @PostConstruct
+    public void init() {
+        globalPermits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Borrow a connection to a tenant database, waiting for a free slot if the global or
+     * per-server cap is reached. Closing the returned connection gives the slot back.
+     * @param serverIp Mapped IP of the database server
+     * @param key Pool key for the host/port/database/user target
+     * @return A database connection
+     */
+    Connection borrow(String serverIp, String key, String url, String user, String password,
+                      PoolFactory factory) throws SQLException {
+        Semaphore serverPermit = serverPermits.computeIfAbsent(serverIp,
+            ip -> new Semaphore(maxConnectionsPerServer, true));
+
+        acquire(serverPermit, "server " + serverIp);
+        try {
+            acquire(globalPermits, "all tenant servers");
+        } catch (SQLException e) {
+            serverPermit.release();
+            throw e;
+        }
+
+        try {
+            TenantPool pool = getOrCreatePool(serverIp, key, url, user, password, factory);
+            try {
+                makeRoom(pool);
+                Connection conn = pool.pool.borrow();
+                return releasingOnClose(conn, () -> {
+                    pool.inUse.decrementAndGet();
+                    pool.touch();
+                    globalPermits.release();
+                    serverPermit.release();
+                });
+            } catch (SQLException | RuntimeException e) {
+                pool.inUse.decrementAndGet();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            globalPermits.release();
+            serverPermit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close pools that have had no connection checked out for longer than the idle TTL
+     */
+    @Scheduled(fixedDelayString = "${db.tenant.reap-interval-ms:60000}")
+    public void reapIdlePools() {
+        long now = System.currentTimeMillis();
+        List<TenantPool> expired = new ArrayList<>();
+
+        synchronized (pools) {
+            Iterator<TenantPool> it = pools.values().iterator();
+            while (it.hasNext()) {
+                TenantPool pool = it.next();
+                if (pool.inUse.get() == 0 && now - pool.lastUsed > idleTtlMs) {
+                    it.remove();
+                    expired.add(pool);
+                }
+            }
+        }
+
+        for (TenantPool pool : expired) {
+            logger.info("Closing tenant pool {} after {} ms idle", pool.key, now - pool.lastUsed);
+            pool.pool.close();
+        }
+    }
+
+    /**
+     * Get connection counts per database server
+     * @return Pools, open connections, connections in use and free slots keyed by server IP
+     */
+    public Map<String, Map<String, Object>> getServerCounts() {
+        Map<String, Map<String, Object>> counts = new TreeMap<>();
+        for (TenantPool pool : snapshot()) {
+            Map<String, Object> server = counts.computeIfAbsent(pool.serverIp, ip -> {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("pools", 0);
+                entry.put("open", 0);
+                entry.put("inUse", 0);
+                return entry;
+            });
+            server.merge("pools", 1, (a, b) -> (Integer) a + (Integer) b);
+            server.merge("open", pool.pool.totalConnections(), (a, b) -> (Integer) a + (Integer) b);
+            server.merge("inUse", pool.inUse.get(), (a, b) -> (Integer) a + (Integer) b);
+        }
+        counts.forEach((ip, server) -> {
+            Semaphore permits = serverPermits.get(ip);
+            server.put("available", permits != null ? permits.availablePermits() : maxConnectionsPerServer);
+        });
+        return counts;
+    }
+
+    /**
+     * Get pool statistics for every tenant pool, keyed by pool name
+     */
+    Map<String, Map<String, Object>> getPoolStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (TenantPool pool : snapshot()) {
+            Map<String, Object> poolStats = pool.pool.stats();
+            poolStats.put("server", pool.serverIp);
+            poolStats.put("idleMs", System.currentTimeMillis() - pool.lastUsed);
+            stats.put(pool.key, poolStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Close all tenant pools
+     */
+    @PreDestroy
+    public void closeAll() {
+        for (TenantPool pool : snapshot()) {
+            pool.pool.close();
+        }
+        synchronized (pools) {
+            pools.clear();
+        }
+    }
+
+    /**
+     * Get the pool for a target with one more connection counted as in use. The count is taken
+     * under the pools lock, so the pool cannot be reaped or evicted before the caller borrows.
+     */
+    private TenantPool getOrCreatePool(String serverIp, String key, String url, String user, String password,
+                                       PoolFactory factory) throws SQLException {
+        synchronized (pools) {
+            TenantPool pool = pools.get(key);
+            if (pool != null && pool.pool.matches(url, user, password)) {
+                pool.checkOut();
+                return pool;
+            }
+        }
+
+        // Create outside the lock - connecting to an unreachable host must not block other tenants.
+        // One pool never needs more connections than its server may have open.
+        TenantPool created = new TenantPool(key, serverIp,
+            factory.create(Math.min(maxPoolSize, maxConnectionsPerServer), connectionIdleTimeoutMs));
+        TenantPool winner;
+        List<TenantPool> toClose = new ArrayList<>();
+
+        synchronized (pools) {
+            TenantPool current = pools.get(key);
+            if (current != null && current.pool.matches(url, user, password)) {
+                winner = current;
+                toClose.add(created);
+            } else {
+                if (current != null) {
+                    logger.info("Configuration changed for tenant pool {}. Replacing it.", key);
+                    toClose.add(current);
+                }
+                pools.put(key, created);
+                winner = created;
+                toClose.addAll(evictOverflow(created));
+            }
+            winner.checkOut();
+        }
+
+        for (TenantPool pool : toClose) {
+            pool.pool.close();
+        }
+        return winner;
+    }
+
+    /**
+     * Remove least recently used pools with nothing checked out until the pool cap is respected.
+     * Must be called while holding the pools lock.
+     */
+    private List<TenantPool> evictOverflow(TenantPool keep) {
+        List<TenantPool> evicted = new ArrayList<>();
+        Iterator<TenantPool> it = pools.values().iterator();
+        while (pools.size() > maxPools && it.hasNext()) {
+            TenantPool pool = it.next();
+            if (pool != keep && pool.inUse.get() == 0) {
+                it.remove();
+                evicted.add(pool);
+                logger.info("Evicting least recently used tenant pool {}", pool.key);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Close idle connections of other pools until a new connection for the given pool fits the
+     * per-server and global caps on open connections. Nothing is done when the pool has an idle
+     * connection to hand out. Pools with nothing checked out are closed whole, least recently used
+     * first; after that the idle connections of busy pools are evicted.
+     */
+    private void makeRoom(TenantPool target) {
+        if (target.pool.idleConnections() > 0) {
+            return;
+        }
+        List<TenantPool> toClose = new ArrayList<>();
+        synchronized (pools) {
+            int serverOpen = 0;
+            int globalOpen = 0;
+            for (TenantPool pool : pools.values()) {
+                int open = pool.pool.totalConnections();
+                globalOpen += open;
+                if (pool.serverIp.equals(target.serverIp)) {
+                    serverOpen += open;
+                }
+            }
+
+            // Iteration starts at the least recently used pool; whole idle pools go first
+            for (boolean busyPools : new boolean[] { false, true }) {
+                Iterator<TenantPool> it = pools.values().iterator();
+                while ((serverOpen >= maxConnectionsPerServer || globalOpen >= maxConnections) && it.hasNext()) {
+                    TenantPool pool = it.next();
+                    boolean sameServer = pool.serverIp.equals(target.serverIp);
+                    if (pool == target || (serverOpen >= maxConnectionsPerServer && !sameServer)
+                            || (pool.inUse.get() > 0) != busyPools) {
+                        continue;
+                    }
+                    int freed = busyPools ? pool.pool.idleConnections() : pool.pool.totalConnections();
+                    if (freed == 0) {
+                        continue;
+                    }
+                    if (busyPools) {
+                        logger.info("Evicting idle connections of tenant pool {} to stay within the connection cap", pool.key);
+                        pool.pool.evictConnections();
+                    } else {
+                        logger.info("Closing idle tenant pool {} to stay within the connection cap", pool.key);
+                        it.remove();
+                        toClose.add(pool);
+                    }
+                    globalOpen -= freed;
+                    if (sameServer) {
+                        serverOpen -= freed;
+                    }
+                }
+            }
+        }
+        for (TenantPool pool : toClose) {
+            pool.pool.close();
+        }
+    }
+
+    private List<TenantPool> snapshot() {
+        synchronized (pools) {
+            return new ArrayList<>(pools.values());
+        }
+    }
+
+    private void acquire(Semaphore permits, String scope) throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                    "Timed out waiting for a tenant connection slot on " + scope);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a tenant connection slot", e);
+        }
+    }
+
+    /**
+     * Wrap a connection so that closing it also runs the given callback exactly once
+     */
+    private static Connection releasingOnClose(Connection conn, Runnable onClose) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+            TenantConnectionRegistry.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                    try {
+                        conn.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            onClose.run();
+                        }
+                    }
+                    return null;
+                }
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    private static class TenantPool {
+        private final String key;
+        private final String serverIp;
+        private final ConnectionPool pool;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        TenantPool(String key, String serverIp, ConnectionPool pool) {
+            this.key = key;
+            this.serverIp = serverIp;
+            this.pool = pool;
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+
+        void checkOut() {
+            inUse.incrementAndGet();
+            touch();
+        }
+    }
+}
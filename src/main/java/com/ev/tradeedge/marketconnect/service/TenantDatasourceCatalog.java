@@ -0,0 +1,229 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ev.tradeedge.marketconnect.model.Database;
+
+/**
+ * In-memory copy of tecfg.tenant_datasource per environment, indexed by datasource id,
+ * server name and tenant id. The catalog is loaded at startup, refreshed periodically,
+ * on demand, and when a datasource id is looked up that the catalog does not know yet.
+ * Loads of one environment run one at a time; a caller that waited for another load uses its
+ * snapshot instead of querying again when that snapshot is recent enough.
+ */
+@Service
+public class TenantDatasourceCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(TenantDatasourceCatalog.class);
+
+    private static final String[] SERVER_TYPES = { "staging", "production" };
+
+    private final DatabaseService databaseService;
+
+    // Latest snapshot per environment; each snapshot is immutable and replaced as a whole
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    // Not synchronized blocks: a load waits on JDBC, which must not pin a virtual thread's carrier
+    private final Map<String, ReentrantLock> loadLocks = Map.of(
+        "staging", new ReentrantLock(), "production", new ReentrantLock());
+
+    @Value("${tenant.catalog.min-refresh-interval-ms:30000}")
+    private long minRefreshIntervalMs;
+
+    public TenantDatasourceCatalog(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Reload the catalog for every environment. Runs at startup and then periodically.
+     */
+    @Scheduled(fixedDelayString = "${tenant.catalog.refresh-ms:300000}")
+    public void refreshAll() {
+        for (String serverType : SERVER_TYPES) {
+            try {
+                refresh(serverType);
+            } catch (SQLException e) {
+                logger.warn("Could not load tenant datasource catalog for {}: {}", serverType, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reload the catalog for one environment from the meta DB. If another load started after
+     * this call while it waited for that load to finish, its result is used instead.
+     * @param serverType "staging" or "production"
+     * @return Number of tenant datasources loaded
+     */
+    public int refresh(String serverType) throws SQLException {
+        return load(normalize(serverType), System.currentTimeMillis()).byId.size();
+    }
+
+    /**
+     * Find a tenant datasource by its tenant_datasource_id
+     * @param serverType "staging" or "production"
+     * @param id tenant_datasource_id
+     */
+    public Optional<Database> findById(String serverType, String id) throws SQLException {
+        Snapshot snapshot = getSnapshot(serverType);
+        Database db = snapshot.byId.get(id);
+
+        // A datasource added since the last refresh - reload, but not more often than the minimum interval
+        // Concurrent misses share one load: any snapshot newer than the one searched will do
+        if (db == null && System.currentTimeMillis() - snapshot.loadedAt > minRefreshIntervalMs) {
+            db = load(normalize(serverType), snapshot.loadedAt + 1).byId.get(id);
+        }
+        return Optional.ofNullable(db);
+    }
+
+    /**
+     * Find the tenant datasources hosted on a database server
+     * @param serverType "staging" or "production"
+     * @param serverName database_server_name
+     */
+    public List<Database> findByServer(String serverType, String serverName) throws SQLException {
+        return copy(getSnapshot(serverType).byServer.get(serverName));
+    }
+
+    /**
+     * Find the tenant datasources of a tenant
+     * @param serverType "staging" or "production"
+     * @param tenantId tenant_id
+     */
+    public List<Database> findByTenant(String serverType, String tenantId) throws SQLException {
+        return copy(getSnapshot(serverType).byTenant.get(tenantId));
+    }
+
+    /**
+     * Get the distinct database server names
+     * @param serverType "staging" or "production"
+     */
+    public List<String> getServerNames(String serverType) throws SQLException {
+        return new ArrayList<>(getSnapshot(serverType).byServer.keySet());
+    }
+
+    /**
+     * Get catalog sizes and load times per environment
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        snapshots.forEach((serverType, snapshot) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("databases", snapshot.byId.size());
+            entry.put("servers", snapshot.byServer.size());
+            entry.put("tenants", snapshot.byTenant.size());
+            entry.put("loadedAt", Instant.ofEpochMilli(snapshot.loadedAt).toString());
+            stats.put(serverType, entry);
+        });
+        return stats;
+    }
+
+    private Snapshot getSnapshot(String serverType) throws SQLException {
+        Snapshot snapshot = snapshots.get(normalize(serverType));
+        if (snapshot == null) {
+            // Not loaded yet, e.g. the meta DB was unreachable at startup
+            snapshot = load(normalize(serverType), Long.MIN_VALUE);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Load the catalog of an environment unless a load that started at or after the given time
+     * has already replaced it. Loads of one environment are serialized, so an older load can
+     * never replace the snapshot of a newer one.
+     * @param key Normalized server type
+     * @param notBefore Earliest start time of a load whose snapshot is good enough
+     * @return The current snapshot
+     */
+    private Snapshot load(String key, long notBefore) throws SQLException {
+        ReentrantLock lock = loadLocks.get(key);
+        lock.lock();
+        try {
+            Snapshot current = snapshots.get(key);
+            if (current != null && current.loadedAt >= notBefore) {
+                return current;
+            }
+
+            long startedAt = System.currentTimeMillis();
+            List<Database> databases = new ArrayList<>();
+            try (Connection conn = databaseService.getMainDbConnection(key);
+                 PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT tenant_datasource_id, tenant_id, database_server_name, " +
+                     "database_port_number, database_name, database_user_name " +
+                     "FROM tecfg.tenant_datasource ORDER BY tenant_datasource_id");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    databases.add(new Database(
+                        rs.getString("tenant_datasource_id"),
+                        rs.getString("tenant_id"),
+                        rs.getString("database_server_name"),
+                        rs.getString("database_port_number"),
+                        rs.getString("database_name"),
+                        rs.getString("database_user_name")
+                    ));
+                }
+            }
+
+            Snapshot snapshot = new Snapshot(databases, startedAt);
+            snapshots.put(key, snapshot);
+            logger.info("Loaded {} tenant datasources for {}", databases.size(), key);
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String normalize(String serverType) {
+        // Same rule as DatabaseService: anything other than staging uses the production meta DB
+        return "staging".equals(serverType) ? "staging" : "production";
+    }
+
+    private List<Database> copy(List<Database> databases) {
+        return databases != null ? new ArrayList<>(databases) : new ArrayList<>();
+    }
+
+    private static class Snapshot {
+        private final Map<String, Database> byId = new HashMap<>();
+        private final Map<String, List<Database>> byServer = new LinkedHashMap<>();
+        private final Map<String, List<Database>> byTenant = new HashMap<>();
+        // When the query started; the snapshot holds no data older than this
+        private final long loadedAt;
+
+        Snapshot(List<Database> databases, long loadedAt) {
+            this.loadedAt = loadedAt;
+            for (String server : new TreeSet<>(databases.stream()
+                    .map(Database::getServerName)
+                    .filter(name -> name != null)
+                    .toList())) {
+                byServer.put(server, new ArrayList<>());
+            }
+            for (Database db : databases) {
+                byId.put(db.getId(), db);
+                if (db.getServerName() != null) {
+                    byServer.get(db.getServerName()).add(db);
+                }
+                byTenant.computeIfAbsent(db.getTenantId(), k -> new ArrayList<>()).add(db);
+            }
+            byServer.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            byTenant.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        }
+    }
+}
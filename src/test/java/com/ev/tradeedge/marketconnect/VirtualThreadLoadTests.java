@@ -0,0 +1,104 @@
+package com.ev.tradeedge.marketconnect;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+
+import jakarta.servlet.Filter;
+
+/**
+ * Load test of the virtual-thread mode: with Tomcat limited to a few platform threads, requests that
+ * block (like JDBC or SFTP calls) must still be served concurrently far beyond that limit.
+ * Runs on Java 21+ only (mvn -Pjava21 test).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.threads.virtual.enabled=true",
+    "server.tomcat.threads.max=" + VirtualThreadLoadTests.PLATFORM_THREADS
+})
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadLoadTests {
+    static final int PLATFORM_THREADS = 8;
+    private static final int REQUESTS = 200;
+    private static final long BLOCK_MS = 250;
+
+    private static final AtomicInteger virtualHandlers = new AtomicInteger();
+
+    @LocalServerPort
+    private int port;
+
+    @TestConfiguration
+    static class BlockingEndpoint {
+        @Bean
+        FilterRegistrationBean<Filter> blockingFilter() {
+            // Answers before security, blocking like a slow query
+            Filter filter = (request, response, chain) -> {
+                try {
+                    if ((boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())) {
+                        virtualHandlers.incrementAndGet();
+                    }
+                    Thread.sleep(BLOCK_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+                response.getWriter().write("ok");
+            };
+            FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(filter);
+            registration.addUrlPatterns("/load-test/block");
+            registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return registration;
+        }
+    }
+
+    @Test
+    void blockingRequestsScalePastPlatformThreadLimit() {
+        ExecutorService clientThreads = Executors.newFixedThreadPool(16);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientThreads).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/load-test/block")).build();
+
+        try {
+            // Warm up connections and the servlet before timing
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).join();
+            virtualHandlers.set(0);
+
+            long start = System.nanoTime();
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                assertEquals(200, response.join().statusCode());
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            // Platform threads alone would need REQUESTS / PLATFORM_THREADS rounds of BLOCK_MS
+            long platformBoundMs = (long) REQUESTS / PLATFORM_THREADS * BLOCK_MS;
+            assertEquals(REQUESTS, virtualHandlers.get(), "every request should be handled on a virtual thread");
+            assertTrue(elapsedMs < platformBoundMs / 4,
+                REQUESTS + " requests took " + elapsedMs + " ms, platform-thread bound is " + platformBoundMs + " ms");
+        } finally {
+            clientThreads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class LogEntryMatcherTests {
+
+    @Test
+    void matchesTheExactFpidNotAPrefix() throws IOException {
+        String[] out = match(new long[] { 42 }, false,
+            "FileProcessId:42 a",
+            "FileProcessId:420 b",
+            "FileProcessId:4200 c",
+            "FileProcessId:142 d",
+            "FileProcessId:42,x e");
+
+        assertEquals(entries("FileProcessId:42 a", "FileProcessId:42,x e"), out[0]);
+    }
+
+    @Test
+    void fpidsSharingAPrefixGoToTheirOwnOutputs() throws IOException {
+        String[] out = match(new long[] { 420, 42, 4 }, false,
+            "FileProcessId:4 a",
+            "FileProcessId:42 b",
+            "FileProcessId:420 c",
+            "FileProcessId:42 d");
+
+        assertEquals(entries("FileProcessId:420 c"), out[0]);
+        assertEquals(entries("FileProcessId:42 b", "FileProcessId:42 d"), out[1]);
+        assertEquals(entries("FileProcessId:4 a"), out[2]);
+    }
+
+    @Test
+    void onlyTheFirstFpidOfAnEntryCounts() throws IOException {
+        String[] out = match(new long[] { 1, 2 }, false,
+            "Thread: [t] TenantId:1 FileProcessId:1 copied from FileProcessId:2",
+            "Thread: [t] TenantId:1 FileProcessId:2 retry of FileProcessId:1");
+
+        assertEquals(entries("Thread: [t] TenantId:1 FileProcessId:1 copied from FileProcessId:2"), out[0]);
+        assertEquals(entries("Thread: [t] TenantId:1 FileProcessId:2 retry of FileProcessId:1"), out[1]);
+
+        // A later mention alone selects nothing
+        out = match(new long[] { 2 }, false, "Thread: [t] TenantId:1 FileProcessId:1 copied from FileProcessId:2");
+        assertEquals("", out[0]);
+    }
+
+    @Test
+    void fpidZeroEntriesAreNotMatchedWithoutRelatedThreads() throws IOException {
+        String[] out = match(new long[] { 7 }, false,
+            "Thread: [t] TenantId:1 FileProcessId:7 a",
+            "Thread: [t] TenantId:1 FileProcessId:0 b",
+            "Thread: [t] TenantId:1 c");
+
+        assertEquals(entries("Thread: [t] TenantId:1 FileProcessId:7 a"), out[0]);
+    }
+
+    @Test
+    void relatedThreadsFollowTheMatchedThreadAndTenant() throws IOException {
+        String[] out = match(new long[] { 7 }, true,
+            "Thread: [t] TenantId:1 FileProcessId:0 before",
+            "Thread: [t] TenantId:1 FileProcessId:7 a",
+            "Thread: [t] TenantId:1 FileProcessId:0 zero",
+            "Thread: [t] TenantId:1 none",
+            "Thread: [t] TenantId:2 FileProcessId:0 other tenant",
+            "Thread: [u] TenantId:1 other thread",
+            "Thread: [t] TenantId:1 FileProcessId:8 other fpid",
+            "FileProcessId:0 no thread");
+
+        assertEquals(entries(
+            "Thread: [t] TenantId:1 FileProcessId:7 a",
+            "Thread: [t] TenantId:1 FileProcessId:0 zero",
+            "Thread: [t] TenantId:1 none"), out[0]);
+    }
+
+    @Test
+    void relatedEntriesGoToEveryFpidOfTheThread() throws IOException {
+        String[] out = match(new long[] { 1, 2 }, true,
+            "Thread: [t] TenantId:1 FileProcessId:1 a",
+            "Thread: [t] TenantId:1 FileProcessId:2 b",
+            "Thread: [t] TenantId:1 shared");
+
+        assertEquals(entries("Thread: [t] TenantId:1 FileProcessId:1 a", "Thread: [t] TenantId:1 shared"), out[0]);
+        assertEquals(entries("Thread: [t] TenantId:1 FileProcessId:2 b", "Thread: [t] TenantId:1 shared"), out[1]);
+    }
+
+    @Test
+    void relatedThreadsExpireAfterTheWindow() throws IOException {
+        LogEntryMatcher matcher = new LogEntryMatcher(new long[] { 7 }, true, 100, 2);
+        Writer[] out = { new StringWriter() };
+        assertTrue(accept(matcher, out, "Thread: [t] TenantId:1 FileProcessId:7 a"));
+        assertTrue(accept(matcher, out, "Thread: [t] TenantId:1 near"));
+        accept(matcher, out, "Thread: [u] TenantId:1 x");
+        accept(matcher, out, "Thread: [u] TenantId:1 y");
+        accept(matcher, out, "Thread: [u] TenantId:1 z");
+        assertFalse(accept(matcher, out, "Thread: [t] TenantId:1 far"));
+    }
+
+    @Test
+    void emptyEntriesAreIgnored() throws IOException {
+        LogEntryMatcher matcher = new LogEntryMatcher(new long[] { 7 }, true, 100, 0);
+        Writer[] out = { new StringWriter() };
+        assertFalse(accept(matcher, out, "   \n  "));
+        assertEquals("", out[0].toString());
+    }
+
+    private static String[] match(long[] fpids, boolean related, String... texts) throws IOException {
+        LogEntryMatcher matcher = new LogEntryMatcher(fpids, related, 100, 0);
+        Writer[] out = new Writer[fpids.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = new StringWriter();
+        }
+        for (String text : texts) {
+            accept(matcher, out, text);
+        }
+        String[] result = new String[out.length];
+        for (int i = 0; i < out.length; i++) {
+            result[i] = out[i].toString();
+        }
+        return result;
+    }
+
+    private static boolean accept(LogEntryMatcher matcher, Writer[] out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        LogEntry entry = new LogEntry();
+        entry.set(bytes, 0, bytes.length);
+        return matcher.accept(entry, out);
+    }
+
+    /**
+     * Entries in the matcher's output format
+     */
+    private static String entries(String... texts) {
+        StringBuilder out = new StringBuilder();
+        for (String text : texts) {
+            out.append("**********\n").append(text).append('\n');
+        }
+        return out.toString();
+    }
+}
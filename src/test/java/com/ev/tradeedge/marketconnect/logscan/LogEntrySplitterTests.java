@@ -0,0 +1,159 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LogEntrySplitterTests {
+    private static final String DELIMITER = "**********";
+    private static final String TEXT_CHARS = "ab \n\tcd é";
+
+    @Test
+    void splitsOnTheDelimiter() throws IOException {
+        assertEquals(List.of("first", "second line\nmore", "third"),
+            split("**********\nfirst\n**********\nsecond line\nmore\n**********\nthird\n", 64));
+    }
+
+    @Test
+    void keepsTextBeforeTheFirstDelimiter() throws IOException {
+        assertEquals(List.of("preamble", "entry"), split("preamble\n**********\nentry", 64));
+    }
+
+    @Test
+    void findsDelimitersAcrossBufferBoundaries() throws IOException {
+        String text = "0123456789ab**********cdef**********g";
+        // Every split of the delimiter between two reads, including one star per read
+        for (int bufferSize = 1; bufferSize <= text.length(); bufferSize++) {
+            assertEquals(List.of("0123456789ab", "cdef", "g"), split(text, bufferSize), "buffer size " + bufferSize);
+        }
+        // A large buffer filled by reads of one byte each
+        assertEquals(List.of("0123456789ab", "cdef", "g"), split(text, 64, oneByteAtATime(text)));
+    }
+
+    @Test
+    void splitsLongStarRunsLikeStringSplit() throws IOException {
+        for (String text : new String[] {
+            "a*********b", // nine stars are text
+            "a***********b", // eleven: the delimiter is the first ten
+            "a********************b", // twenty: two delimiters with an empty entry between
+            "**********", "***********", "a**********", "**********b",
+            "a*****\n*****b"
+        }) {
+            for (int bufferSize : new int[] { 1, 3, 9, 10, 11, 64 }) {
+                assertEquals(stringSplit(text), split(text, bufferSize), "'" + text + "', buffer size " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    void matchesStringSplitOnRandomText() throws IOException {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(300);
+            while (text.length() < length) {
+                // Mostly text, with star runs of every length around the delimiter's
+                if (random.nextInt(4) == 0) {
+                    text.append("*".repeat(1 + random.nextInt(22)));
+                } else {
+                    text.append(TEXT_CHARS.charAt(random.nextInt(TEXT_CHARS.length())));
+                }
+            }
+            int bufferSize = 1 + random.nextInt(40);
+            assertEquals(stringSplit(text.toString()), split(text.toString(), bufferSize),
+                "'" + text + "', buffer size " + bufferSize);
+        }
+    }
+
+    @Test
+    void reportsRawEntryRanges() throws IOException {
+        byte[] bytes = "  lead \n**********\n entry one \n**********entry two\n".getBytes(StandardCharsets.UTF_8);
+        LogEntrySplitter splitter = new LogEntrySplitter(new ByteArrayInputStream(bytes), 5, 1024);
+        long expectedOffset = 0;
+        for (LogEntry entry = splitter.next(); entry != null; entry = splitter.next()) {
+            assertEquals(expectedOffset, splitter.entryOffset());
+            String raw = new String(bytes, (int) splitter.entryOffset(), splitter.entryLength(), StandardCharsets.UTF_8);
+            assertEquals(raw.trim(), entry.toString());
+            expectedOffset = splitter.entryOffset() + splitter.entryLength() + DELIMITER.length();
+        }
+        assertEquals(bytes.length, splitter.entryOffset() + splitter.entryLength());
+    }
+
+    @Test
+    void cutsOversizedEntriesIntoPieces() throws IOException {
+        String big = "x".repeat(1000);
+        String text = "small**********" + big + "**********tail";
+        LogEntrySplitter splitter = new LogEntrySplitter(
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), 16, 100);
+
+        assertEquals("small", splitter.next().toString());
+        StringBuilder pieces = new StringBuilder();
+        int count = 0;
+        LogEntry entry;
+        while (!(entry = splitter.next()).toString().equals("tail")) {
+            assertTrue(entry.length() <= 200, "piece of " + entry.length() + " bytes");
+            pieces.append(entry);
+            count++;
+        }
+        assertEquals(big, pieces.toString());
+        assertTrue(count > 1);
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void emptyInputIsOneEmptyEntry() throws IOException {
+        LogEntrySplitter splitter = new LogEntrySplitter(new ByteArrayInputStream(new byte[0]), 16, 100);
+        assertTrue(splitter.next().isEmpty());
+        assertNull(splitter.next());
+    }
+
+    /**
+     * Non-empty entries the splitter returns, as text
+     */
+    private static List<String> split(String text, int bufferSize) throws IOException {
+        return split(text, bufferSize, new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> split(String text, int bufferSize, InputStream in) throws IOException {
+        LogEntrySplitter splitter = new LogEntrySplitter(in, bufferSize, 1 << 20);
+        List<String> entries = new ArrayList<>();
+        for (LogEntry entry = splitter.next(); entry != null; entry = splitter.next()) {
+            if (!entry.isEmpty()) {
+                entries.add(entry.toString());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Non-empty, trimmed parts of String.split on the delimiter, as the string-based scan produced them
+     */
+    private static List<String> stringSplit(String text) {
+        List<String> entries = new ArrayList<>();
+        for (String part : text.split("\\*\\*\\*\\*\\*\\*\\*\\*\\*\\*")) {
+            if (!part.trim().isEmpty()) {
+                entries.add(part.trim());
+            }
+        }
+        return entries;
+    }
+
+    private static InputStream oneByteAtATime(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+}
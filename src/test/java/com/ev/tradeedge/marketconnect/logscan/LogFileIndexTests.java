@@ -0,0 +1,293 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class LogFileIndexTests {
+    private static final int BLOCK_BYTES = 4096;
+
+    private final LogFileScanner scanner = new LogFileScanner();
+    private byte[] log;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(scanner, "bufferSize", 512);
+        ReflectionTestUtils.setField(scanner, "maxEntryBytes", 8192);
+
+        // FPIDs 1-40 each log a short burst on one of 30 threads, between FPID-less and FPID 0 entries,
+        // one second apart; a few entries after the first have no timestamp
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            int thread = random.nextInt(30);
+            text.append("**********\n");
+            if (i == 0 || random.nextInt(20) > 0) {
+                text.append(String.format("2024-05-01 10:%02d:%02d INFO ", i / 60 % 60, i % 60));
+            }
+            text.append("Thread: [worker-").append(thread).append("] TenantId:").append(thread % 3);
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                text.append(" FileProcessId:").append(1 + (i / 50 + thread) % 40);
+            } else if (kind < 6) {
+                text.append(" FileProcessId:0");
+            }
+            text.append(" message ").append(i).append('\n');
+            if (random.nextInt(100) == 0) {
+                text.append("x".repeat(9000)).append('\n');
+            }
+        }
+        log = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void indexedScanWritesWhatFullScanWrites() throws IOException {
+        for (boolean gzip : new boolean[] { false, true }) {
+            LogFileIndex index = roundTrip(buildIndex(gzip));
+            assertTrue(index.blockCount() > 10, "log should span many blocks");
+
+            for (boolean related : new boolean[] { false, true }) {
+                for (long[] fpids : new long[][] { { 7 }, { 3, 21 }, { 40, 1, 12 }, { 0 } }) {
+                    String[] full = scan(fpids, related, gzip, null);
+                    String[] indexed = scan(fpids, related, gzip, index);
+                    assertTrue(full[0].length() > 0, "FPID " + fpids[0] + " should have entries");
+                    assertEquals(Arrays.asList(full), Arrays.asList(indexed),
+                        "FPIDs " + Arrays.toString(fpids) + ", related threads " + related + ", gzip " + gzip);
+                }
+            }
+        }
+    }
+
+    @Test
+    void timeWindowGivesTheSameEntriesOnEveryPath() throws IOException {
+        // 10:10:00 to 10:19:59, i.e. entries 600-1199
+        TimeWindow window = new TimeWindow(epochSeconds("10:10:00"), epochSeconds("10:19:59"));
+        for (boolean gzip : new boolean[] { false, true }) {
+            LogFileIndex index = roundTrip(buildIndex(gzip));
+            for (boolean related : new boolean[] { false, true }) {
+                for (long[] fpids : new long[][] { { 7 }, { 3, 21 }, { 0 } }) {
+                    String label = "FPIDs " + Arrays.toString(fpids) + ", related threads " + related + ", gzip " + gzip;
+                    String[] expected = scan(fpids, related, gzip, null, window);
+                    assertTrue(expected[0].length() > 0, label);
+                    for (String entries : expected) {
+                        assertFalse(entries.contains(" message 599\n") || entries.contains(" message 1200\n"), label);
+                    }
+
+                    // While building an index the whole file is read, but only the window is written
+                    LogFileIndex.Builder builder = new LogFileIndex.Builder(BLOCK_BYTES);
+                    LogEntryMatcher matcher = new LogEntryMatcher(fpids, related, 100, 0);
+                    Writer[] out = writers(fpids.length);
+                    scanner.scan(new ByteArrayInputStream(content(gzip)), gzip, matcher, out, builder, window);
+                    assertEquals(Arrays.asList(expected), Arrays.asList(strings(out)), label);
+                    assertEquals(index.blockCount(), builder.build().blockCount(), label);
+
+                    assertEquals(Arrays.asList(expected), Arrays.asList(scan(fpids, related, gzip, index, window)), label);
+
+                    if (!gzip) {
+                        matcher = new LogEntryMatcher(fpids, related, 100, 0);
+                        out = writers(fpids.length);
+                        scanner.scan(offset -> new ByteArrayInputStream(log, (int) offset, log.length - (int) offset),
+                            log.length, window, matcher, out);
+                        assertEquals(Arrays.asList(expected), Arrays.asList(strings(out)), label);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void entriesWithoutATimestampFollowThePreviousOne() throws IOException {
+        // Without a leading entry the uncompressed read seeks past the older entries
+        for (boolean leading : new boolean[] { false, true }) {
+            StringBuilder text = new StringBuilder();
+            if (leading) {
+                text.append("**********\nThread: [t] TenantId:1 FileProcessId:7 before any timestamp");
+            }
+            for (int i = 0; i < 100; i++) {
+                text.append("**********\n2024-05-01 09:59:00 FileProcessId:8 older ").append(i);
+            }
+            // The long entry is sized so the seek lands in it; the entry without a timestamp after it is then
+            // the first one the scan sees, and must count as older than the window
+            text.append("**********\n2024-05-01 10:00:00 FileProcessId:7 early")
+                .append("**********\nThread: [t] TenantId:1 FileProcessId:7 early, no timestamp")
+                .append("**********\n2024-05-01 10:00:01 FileProcessId:8 long ").append("x".repeat(350))
+                .append("**********\nThread: [t] TenantId:1 FileProcessId:7 after the long one, no timestamp")
+                .append("**********\n2024-05-01 10:00:04 FileProcessId:8 just before")
+                .append("**********\n2024-05-01 10:00:10 FileProcessId:7 inside")
+                .append("**********\nThread: [t] TenantId:1 FileProcessId:7 inside, no timestamp")
+                .append("**********\n2024-05-01 10:00:20 FileProcessId:7 late")
+                .append("**********\nThread: [t] TenantId:1 FileProcessId:7 late, no timestamp");
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            TimeWindow window = new TimeWindow(epochSeconds("10:00:05"), epochSeconds("10:00:15"));
+            String expected = (leading ? "**********\nThread: [t] TenantId:1 FileProcessId:7 before any timestamp\n" : "")
+                + "**********\n2024-05-01 10:00:10 FileProcessId:7 inside\n"
+                + "**********\nThread: [t] TenantId:1 FileProcessId:7 inside, no timestamp\n";
+
+            Writer[] out = writers(1);
+            scanner.scan(new ByteArrayInputStream(bytes), false, new LogEntryMatcher(new long[] { 7 }, false, 100, 0),
+                out, null, window);
+            assertEquals(expected, out[0].toString());
+
+            out = writers(1);
+            scanner.scan(offset -> new ByteArrayInputStream(bytes, (int) offset, bytes.length - (int) offset),
+                bytes.length, window, new LogEntryMatcher(new long[] { 7 }, false, 100, 0), out);
+            assertEquals(expected, out[0].toString(), "leading entry " + leading);
+        }
+    }
+
+    @Test
+    void skipsFilesAndBlocksWithoutTheFpid() throws IOException {
+        LogFileIndex index = roundTrip(buildIndex(false));
+
+        assertTrue(index.mightContainAny(new long[] { 99, 7 }));
+        assertFalse(index.mightContainAny(new long[] { 99 }));
+        assertFalse(index.mightContainAny(new long[] { 123456789 }));
+        assertTrue(Files.size(directory.resolve("log.idx")) < log.length / 20, "index should be small");
+
+        int blocks = 0;
+        for (int block = 0; block < index.blockCount(); block++) {
+            if (index.blockMightContainAny(block, new long[] { 7 })) {
+                blocks++;
+            }
+        }
+        assertTrue(blocks < index.blockCount() / 2, "FPID 7 is only in " + blocks + " of " + index.blockCount() + " blocks");
+    }
+
+    @Test
+    void indexSizeDoesNotGrowWithEntries() throws IOException {
+        // 200k short entries, each with its own FPID
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            text.append("**********\nThread: [t").append(i % 50).append("] TenantId:1 FileProcessId:").append(1_000_000 + i);
+        }
+        byte[] many = text.toString().getBytes(StandardCharsets.UTF_8);
+        LogFileIndex.Builder builder = new LogFileIndex.Builder();
+        scanner.scan(new ByteArrayInputStream(many), false, new LogEntryMatcher(new long[] { 1 }, false, 100, 0),
+            writers(1), builder);
+
+        Path path = directory.resolve("many.idx");
+        builder.build().write(path);
+        long maxBytes = LogFileIndex.MAX_FILE_BLOOM_WORDS * 8L
+            + (many.length / LogFileIndex.BLOCK_BYTES + 1) * (2 * LogFileIndex.MAX_BLOOM_WORDS * 8L + 64);
+        assertTrue(Files.size(path) <= maxBytes, "index of " + many.length + " bytes took " + Files.size(path));
+
+        LogFileIndex index = LogFileIndex.read(path);
+        assertTrue(index.mightContainAny(new long[] { 1_000_000 }));
+        assertTrue(index.mightContainAny(new long[] { 1_199_999 }));
+    }
+
+    @Test
+    void blocksStartAfterDelimiters() throws IOException {
+        LogFileIndex index = buildIndex(false);
+        assertEquals(0, index.blockStart(0));
+        for (int block = 1; block < index.blockCount(); block++) {
+            long start = index.blockStart(block);
+            assertEquals("**********", new String(log, (int) start - 10, 10, StandardCharsets.US_ASCII));
+            assertEquals(start, index.blockEnd(block - 1));
+        }
+        assertEquals(log.length, index.blockEnd(index.blockCount() - 1));
+    }
+
+    @Test
+    void truncatedFileIsAReadError() throws IOException {
+        LogFileIndex index = buildIndex(false);
+        byte[] truncated = Arrays.copyOf(log, log.length / 2);
+        long[] fpids = { 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+        LogEntryMatcher matcher = new LogEntryMatcher(fpids, true, 100, 0);
+        Writer[] out = writers(fpids.length);
+
+        assertThrows(LogReadException.class,
+            () -> scanner.scan(new ByteArrayInputStream(truncated), false, index, fpids, matcher, out, null));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("other.idx");
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThrows(IOException.class, () -> LogFileIndex.read(path));
+    }
+
+    private LogFileIndex buildIndex(boolean gzip) throws IOException {
+        LogFileIndex.Builder builder = new LogFileIndex.Builder(BLOCK_BYTES);
+        scanner.scan(new ByteArrayInputStream(content(gzip)), gzip, new LogEntryMatcher(new long[] { 1 }, false, 100, 0),
+            writers(1), builder);
+        return builder.build();
+    }
+
+    private LogFileIndex roundTrip(LogFileIndex index) throws IOException {
+        Path path = directory.resolve("log.idx");
+        index.write(path);
+        return LogFileIndex.read(path);
+    }
+
+    private String[] scan(long[] fpids, boolean related, boolean gzip, LogFileIndex index) throws IOException {
+        return scan(fpids, related, gzip, index, null);
+    }
+
+    private String[] scan(long[] fpids, boolean related, boolean gzip, LogFileIndex index, TimeWindow window)
+            throws IOException {
+        LogEntryMatcher matcher = new LogEntryMatcher(fpids, related, 100, 0);
+        Writer[] out = writers(fpids.length);
+        ByteArrayInputStream in = new ByteArrayInputStream(content(gzip));
+        if (index == null) {
+            scanner.scan(in, gzip, matcher, out, null, window);
+        } else {
+            scanner.scan(in, gzip, index, fpids, matcher, out, window);
+        }
+        return strings(out);
+    }
+
+    private static String[] strings(Writer[] out) {
+        String[] result = new String[out.length];
+        for (int i = 0; i < out.length; i++) {
+            result[i] = out[i].toString();
+        }
+        return result;
+    }
+
+    private static long epochSeconds(String time) {
+        return LocalDateTime.parse("2024-05-01T" + time).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private byte[] content(boolean gzip) throws IOException {
+        if (!gzip) {
+            return log;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(log);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Writer[] writers(int count) {
+        Writer[] out = new Writer[count];
+        for (int i = 0; i < count; i++) {
+            out[i] = new StringWriter();
+        }
+        return out;
+    }
+}
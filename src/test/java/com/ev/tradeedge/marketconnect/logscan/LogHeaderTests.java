@@ -0,0 +1,140 @@
+package com.ev.tradeedge.marketconnect.logscan;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class LogHeaderTests {
+    private final LogHeader header = new LogHeader();
+
+    @Test
+    void parsesAllFields() {
+        parse("2024-05-01 10:15:30,123 INFO [main] Thread: [pool-1-thread-3] TenantId:-12 FileProcessId:987654 done");
+
+        assertEquals("2024-05-01 10:15:30,123", header.getTimestamp());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 15, 30).toEpochSecond(ZoneOffset.UTC), header.getTimestampSeconds());
+        assertEquals("INFO", header.getLevel());
+        assertEquals("pool-1-thread-3", header.getThread());
+        assertEquals("-12", header.getTenantId());
+        assertTrue(header.hasFileProcessId());
+        assertEquals(987654, header.getFileProcessId());
+    }
+
+    @Test
+    void missingFieldsAreAbsent() {
+        parse("just some text\nwith a second line");
+
+        assertNull(header.getTimestamp());
+        assertEquals(LogHeader.NO_TIMESTAMP, header.getTimestampSeconds());
+        assertNull(header.getLevel());
+        assertFalse(header.hasThread());
+        assertNull(header.getThread());
+        assertFalse(header.hasTenantId());
+        assertNull(header.getTenantId());
+        assertFalse(header.hasFileProcessId());
+        assertEquals(0, header.threadTenantHash());
+    }
+
+    @Test
+    void malformedFieldsAreAbsent() {
+        parse("2024-05-01 10:15 FileProcessId:abc Thread: worker TenantId:- x");
+        assertNull(header.getTimestamp());
+        assertFalse(header.hasFileProcessId());
+        assertFalse(header.hasThread());
+        assertFalse(header.hasTenantId());
+
+        parse("2024-05-01X10:15:30 Thread: [] TenantId:x FileProcessId:");
+        assertNull(header.getTimestamp());
+        assertFalse(header.hasThread());
+        assertFalse(header.hasTenantId());
+        assertFalse(header.hasFileProcessId());
+
+        parse("Thread: [never closed TenantId:");
+        assertFalse(header.hasThread());
+        assertFalse(header.hasTenantId());
+    }
+
+    @Test
+    void malformedFieldDoesNotHideALaterOne() {
+        parse("FileProcessId:x Thread:x FileProcessId:42 Thread:  [t1] TenantId:5");
+        assertEquals(42, header.getFileProcessId());
+        assertEquals("t1", header.getThread());
+        assertEquals("5", header.getTenantId());
+    }
+
+    @Test
+    void firstOccurrenceWins() {
+        parse("FileProcessId:1 Thread: [a] TenantId:2 FileProcessId:3 Thread: [b] TenantId:4");
+        assertEquals(1, header.getFileProcessId());
+        assertEquals("a", header.getThread());
+        assertEquals("2", header.getTenantId());
+    }
+
+    @Test
+    void fileProcessIdZeroIsPresent() {
+        parse("Thread: [t] TenantId:1 FileProcessId:0");
+        assertTrue(header.hasFileProcessId());
+        assertEquals(0, header.getFileProcessId());
+    }
+
+    @Test
+    void fileProcessIdStopsAtTheFirstNonDigit() {
+        parse("FileProcessId:420,other");
+        assertEquals(420, header.getFileProcessId());
+        parse("FileProcessId:42");
+        assertEquals(42, header.getFileProcessId());
+    }
+
+    @Test
+    void levelIsAWholeWordOnTheFirstLine() {
+        parse("2024-05-01T10:15:30 INFORMATION xERROR WARNING rest");
+        assertEquals("2024-05-01T10:15:30", header.getTimestamp());
+        assertEquals("WARNING", header.getLevel());
+
+        parse("no level here\nERROR on the second line");
+        assertNull(header.getLevel());
+    }
+
+    @Test
+    void parsingResetsThePreviousEntry() {
+        parse("2024-05-01 10:15:30 ERROR Thread: [t] TenantId:1 FileProcessId:5");
+        parse("plain");
+        assertNull(header.getTimestamp());
+        assertNull(header.getLevel());
+        assertFalse(header.hasThread());
+        assertFalse(header.hasTenantId());
+        assertFalse(header.hasFileProcessId());
+    }
+
+    @Test
+    void threadTenantHashIdentifiesThePair() {
+        long hash = hashOf("Thread: [t1] TenantId:5");
+        assertNotEquals(0, hash);
+        assertEquals(hash, hashOf("other text TenantId:5 more Thread: [t1]"));
+        assertNotEquals(hash, hashOf("Thread: [t1] TenantId:6"));
+        assertNotEquals(hash, hashOf("Thread: [t2] TenantId:5"));
+        // The separator keeps the split between thread and tenant
+        assertNotEquals(hashOf("Thread: [t1] TenantId:55"), hashOf("Thread: [t15] TenantId:5"));
+        assertEquals(0, hashOf("Thread: [t1]"));
+    }
+
+    private long hashOf(String text) {
+        parse(text);
+        return header.threadTenantHash();
+    }
+
+    private void parse(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        LogEntry entry = new LogEntry();
+        entry.set(bytes, 0, bytes.length);
+        header.parse(entry);
+    }
+}
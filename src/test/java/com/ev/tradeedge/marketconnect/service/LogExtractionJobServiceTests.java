@@ -0,0 +1,79 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ev.tradeedge.marketconnect.config.VirtualThreads;
+import com.ev.tradeedge.marketconnect.model.LogExtractRequest;
+
+class LogExtractionJobServiceTests {
+    private final LogExtractionJobService jobService =
+        new LogExtractionJobService(mock(LogToolService.class), new VirtualThreads());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jobService, "concurrency", 1);
+        ReflectionTestUtils.setField(jobService, "queueSize", 10);
+        ReflectionTestUtils.setField(jobService, "maxPageBytes", 4096);
+        jobService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void jobsAreOnlyVisibleToTheirOwnerAndAdministrators() throws IOException {
+        String alice = submit("alice");
+        String bob = submit("bob");
+
+        assertEquals(List.of(alice), jobIds(jobService.getJobs("alice", false)));
+        assertEquals(Set.of(alice, bob), Set.copyOf(jobIds(jobService.getJobs("admin", true))));
+
+        assertNotNull(jobService.getStatus(alice, "alice", false));
+        assertNull(jobService.getStatus(alice, "bob", false));
+        assertNotNull(jobService.getStatus(alice, "admin", true));
+        assertNotNull(jobService.getResult(alice, 0, 100, "alice", false));
+        assertNull(jobService.getResult(alice, 0, 100, "bob", false));
+    }
+
+    @Test
+    void onlyTheOwnerOrAnAdministratorCanCancelOrDelete() throws IOException {
+        String alice = submit("alice");
+
+        assertFalse(jobService.cancel(alice, "bob", false));
+        assertFalse(jobService.delete(alice, "bob", false));
+        assertNotNull(jobService.getStatus(alice, "alice", false));
+
+        assertTrue(jobService.cancel(alice, "alice", false));
+        assertTrue(jobService.delete(alice, "admin", true));
+        assertNull(jobService.getStatus(alice, "alice", false));
+    }
+
+    private String submit(String owner) throws IOException {
+        LogExtractRequest request = new LogExtractRequest();
+        request.setFpid("1");
+        request.setServer("staging");
+        request.setServices(List.of("service"));
+        return (String) jobService.submit(request, owner).get("jobId");
+    }
+
+    private static List<Object> jobIds(List<Map<String, Object>> jobs) {
+        return jobs.stream().map(job -> job.get("jobId")).toList();
+    }
+}
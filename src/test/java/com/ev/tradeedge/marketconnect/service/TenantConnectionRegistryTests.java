@@ -0,0 +1,118 @@
+package com.ev.tradeedge.marketconnect.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+class TenantConnectionRegistryTests {
+    private final TenantConnectionRegistry registry = new TenantConnectionRegistry();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(registry, "maxPools", 1);
+        ReflectionTestUtils.setField(registry, "maxConnections", 100);
+        ReflectionTestUtils.setField(registry, "maxConnectionsPerServer", 100);
+        // Every pool with nothing checked out may be reaped at once
+        ReflectionTestUtils.setField(registry, "idleTtlMs", -1L);
+        ReflectionTestUtils.setField(registry, "maxPoolSize", 10);
+        ReflectionTestUtils.setField(registry, "borrowTimeoutMs", 10000L);
+        registry.init();
+    }
+
+    @Test
+    void borrowedPoolIsNeverClosedUnderTheBorrower() throws Exception {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Reaps in a loop while borrowers alternate between two keys, so that each new pool
+        // also evicts the other one over the one-pool cap
+        Thread reaper = new Thread(() -> {
+            await(start);
+            while (!done.get()) {
+                registry.reapIdlePools();
+            }
+        });
+        List<Thread> borrowers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            borrowers.add(new Thread(() -> {
+                await(start);
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        String key = "tenant-" + (i + thread) % 2;
+                        try (Connection conn = registry.borrow("10.0.0.1", key, "jdbc:test:" + key, "user", "secret",
+                                (maxSize, idleTimeoutMs) -> new ConnectionPool(new FakeDataSource(),
+                                    "jdbc:test:" + key, "user", "secret"))) {
+                            assertTrue(conn != null);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        reaper.start();
+        borrowers.forEach(Thread::start);
+        start.countDown();
+        for (Thread borrower : borrowers) {
+            borrower.join();
+        }
+        done.set(true);
+        reaper.join();
+
+        assertEquals(List.of(), new ArrayList<>(failures));
+        // Every slot came back
+        assertEquals(100, registry.getServerCounts().getOrDefault("10.0.0.1", Map.of("available", 100)).get("available"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands out dummy connections and fails like Hikari once closed
+     */
+    private static class FakeDataSource extends HikariDataSource {
+        private volatile boolean closed;
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (closed) {
+                throw new SQLException("HikariDataSource has been closed.");
+            }
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> null);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}